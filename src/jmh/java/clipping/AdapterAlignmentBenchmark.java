@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the scalar and the vectorized score-only adapter alignment on reads with and without adapters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdapterAlignmentBenchmark {
+
+	private static final String ADAPTER = "AGATCGGAAGAGCACACGTCTGAACTCCAGTCAC";
+	private static final int READS = 1024;
+
+	@Param({"scalar", "vector"})
+	public String kernel;
+
+	@Param({"100", "150"})
+	public int readLength;
+
+	private ScoreOnlyAlignment alignment;
+	private final SequenceAlignmentResults results = new SequenceAlignmentResults();
+	private String[] reads;
+
+	@Setup
+	public void setup() {
+		alignment = kernel.equals("vector") ? new VectorScoreOnlyAlignment() : new ScoreOnlyAlignment();
+
+		Random random = new Random(42);
+		reads = new String[READS];
+		for(int i = 0; i < READS; i++) {
+			StringBuilder read = new StringBuilder(readLength);
+			//half of the reads end with a part of the adapter
+			int adapterStart = i % 2 == 0 ? readLength : random.nextInt(readLength);
+			for(int k = 0; k < readLength; k++) {
+				if(k >= adapterStart && k - adapterStart < ADAPTER.length()) {
+					read.append(ADAPTER.charAt(k - adapterStart));
+				} else {
+					read.append("ACGT".charAt(random.nextInt(4)));
+				}
+			}
+			reads[i] = read.toString();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(READS)
+	public int align() {
+		int sum = 0;
+		for(String read : reads) {
+			alignment.align(read, ADAPTER, results);
+			sum += results.queryStart();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An adapter sequence and the name it is reported with.
+ */
+public class Adapter {
+
+	private final String name;
+	private final String sequence;
+
+	public Adapter(String name, String sequence) {
+		this.name = name;
+		this.sequence = sequence;
+	}
+
+	public String name() {
+		return this.name;
+	}
+
+	public String sequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * @param value an adapter sequence, a comma separated list of adapter sequences or the path of a FASTA file of adapters
+	 * @return the adapters, sequences given directly are named by themselves
+	 */
+	public static List<Adapter> parse(String value) {
+		List<Adapter> adapters = new ArrayList<Adapter>();
+		if(new File(value).isFile()) {
+			readFasta(value, adapters);
+		} else {
+			for(String sequence : value.split(",")) {
+				sequence = sequence.trim().toUpperCase();
+				if(!sequence.matches("[A-Za-z]+")) {
+					throw new RuntimeException("ERROR: " + value + " is neither an adapter sequence nor a FASTA file ! Exiting ...");
+				}
+				adapters.add(new Adapter(sequence, sequence));
+			}
+		}
+		if(adapters.isEmpty()) {
+			throw new RuntimeException("ERROR: No adapters found in " + value + " ! Exiting ...");
+		}
+		return adapters;
+	}
+
+	private static void readFasta(String file, List<Adapter> adapters) {
+		try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String name = null;
+			StringBuilder sequence = new StringBuilder();
+			String line;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(line.startsWith(">")) {
+					addFastaRecord(file, name, sequence, adapters);
+					name = line.substring(1).trim();
+					sequence.setLength(0);
+				} else if(!line.isEmpty()) {
+					if(name == null) {
+						throw new RuntimeException("ERROR: The adapter file " + file + " is not in FASTA format ! Exiting ...");
+					}
+					sequence.append(line.toUpperCase());
+				}
+			}
+			addFastaRecord(file, name, sequence, adapters);
+		} catch(IOException e) {
+			throw new RuntimeException("ERROR: Could not read the adapter file " + file + " ! Exiting ...");
+		}
+	}
+
+	private static void addFastaRecord(String file, String name, StringBuilder sequence, List<Adapter> adapters) {
+		if(name == null) {
+			return;
+		}
+		if(sequence.length() == 0) {
+			throw new RuntimeException("ERROR: The adapter " + name + " in " + file + " has no sequence ! Exiting ...");
+		}
+		adapters.add(new Adapter(name.isEmpty() ? sequence.toString() : name, sequence.toString()));
+	}
+}
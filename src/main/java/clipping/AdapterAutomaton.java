@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+/**
+ * An Aho-Corasick automaton of the seeds of several adapters, which finds the adapters a read may contain in a single scan.
+ *
+ * The candidates are exact: every adapter whose alignment {@link Clipper#adapterCutoffIndex(SequenceAlignmentResults)}
+ * accepts is a candidate. The alignment ends in the first cell with the highest score, so every part at its end scores
+ * more than zero. An accepted alignment of more than one column therefore ends with {@link #SEED_LENGTH} matches,
+ * the last one at adapter position {@link #MIN_SEED_END} or later, unless it ends at one of the last two read positions. An accepted alignment of one column is a match of the first adapter nucleotide at the end of the read.
+ * So the seeds of an adapter are its 2-mers, which count anywhere in the read if they end late enough in the adapter
+ * and otherwise only at the 3' end of the read.
+ * Adapters with other nucleotides than A, C, G and T are candidates for every read, as are all adapters
+ * for reads with such nucleotides or shorter than a seed.
+ */
+public class AdapterAutomaton {
+
+	public static final int MAX_ADAPTERS = 64;
+	public static final int SEED_LENGTH = 2;
+	//the rules accepting alignments within the read need at least 5 adapter nucleotides
+	public static final int MIN_SEED_END = 4;
+
+	private static final int ALPHABET = 4;
+
+	//the transitions of the states, the root is state 0
+	private int[] next;
+	//the adapters with a seed ending at a state anywhere or at the end of the read, including the ones of its suffixes
+	private long[] seeds;
+	private long[] tails;
+	private int states = 1;
+	//the adapters starting with a nucleotide, for the last one of the read
+	private final long[] firstNucleotides = new long[ALPHABET];
+
+	private final long allAdapters;
+	private long alwaysCandidates = 0;
+
+	public AdapterAutomaton(String[] adapters) {
+		if(adapters.length > MAX_ADAPTERS) {
+			throw new RuntimeException("ERROR: At most " + MAX_ADAPTERS + " adapters can be clipped per read ! Exiting ...");
+		}
+		this.allAdapters = adapters.length == MAX_ADAPTERS ? -1L : (1L << adapters.length) - 1;
+
+		int capacity = 1;
+		for(String adapter : adapters) {
+			capacity += adapter.length() * SEED_LENGTH;
+		}
+		next = new int[capacity * ALPHABET];
+		seeds = new long[capacity];
+		tails = new long[capacity];
+
+		for(int a = 0; a < adapters.length; a++) {
+			String adapter = adapters[a];
+			long bit = 1L << a;
+			if(!known(adapter) || adapter.length() < SEED_LENGTH) {
+				alwaysCandidates |= bit;
+				continue;
+			}
+			for(int end = SEED_LENGTH - 1; end < adapter.length(); end++) {
+				int state = add(adapter.substring(end - SEED_LENGTH + 1, end + 1));
+				tails[state] |= bit;
+				if(end >= MIN_SEED_END) {
+					seeds[state] |= bit;
+				}
+			}
+			firstNucleotides[code(adapter.charAt(0))] |= bit;
+		}
+		link();
+	}
+
+	private static int code(char c) {
+		switch(c) {
+			case 'A':
+				return 0;
+			case 'C':
+				return 1;
+			case 'G':
+				return 2;
+			case 'T':
+				return 3;
+			default:
+				return -1;
+		}
+	}
+
+	private static boolean known(String sequence) {
+		for(int i = 0; i < sequence.length(); i++) {
+			if(code(sequence.charAt(i)) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * adds a pattern to the trie
+	 * @return the state the pattern ends in
+	 */
+	private int add(String pattern) {
+		int state = 0;
+		for(int i = 0; i < pattern.length(); i++) {
+			int index = state * ALPHABET + code(pattern.charAt(i));
+			if(next[index] == 0) {
+				next[index] = states++;
+			}
+			state = next[index];
+		}
+		return state;
+	}
+
+	/**
+	 * turns the trie into the automaton: missing transitions follow the failure links
+	 * and every state inherits the adapters of its failure state
+	 */
+	private void link() {
+		int[] failure = new int[states];
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+
+		for(int c = 0; c < ALPHABET; c++) {
+			int child = next[c];
+			if(child != 0) {
+				queue[tail++] = child;
+			}
+		}
+		while(head < tail) {
+			int state = queue[head++];
+			seeds[state] |= seeds[failure[state]];
+			tails[state] |= tails[failure[state]];
+			for(int c = 0; c < ALPHABET; c++) {
+				int index = state * ALPHABET + c;
+				int child = next[index];
+				if(child != 0) {
+					failure[child] = next[failure[state] * ALPHABET + c];
+					queue[tail++] = child;
+				} else {
+					next[index] = next[failure[state] * ALPHABET + c];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param read
+	 * @return a bit for each adapter which has to be aligned to the read, in the order of the adapters
+	 */
+	public long candidates(String read) {
+		int length = read.length();
+		if(length < SEED_LENGTH) {
+			return allAdapters;
+		}
+
+		long candidates = alwaysCandidates;
+		int state = 0;
+		int code = 0;
+		for(int i = 0; i < length; i++) {
+			code = code(read.charAt(i));
+			if(code < 0) {
+				return allAdapters;
+			}
+			state = next[state * ALPHABET + code];
+			candidates |= seeds[state];
+			//the alignment may end up to two nucleotides before the end of the read
+			if(i >= length - 2) {
+				candidates |= tails[state];
+			}
+		}
+		return candidates | firstNucleotides[code];
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+/**
+ * Finds the dominant 3' adapter of a sample of reads.
+ *
+ * Reads with inserts shorter than the read run into the adapter up to their 3' end, so only the k-mer at the 3' end
+ * of each read is counted, in a table indexed by its 2 bit encoding. Over all reads these k-mers are spread over the
+ * adapter by the insert lengths, while the k-mers of the inserts are spread over the genome.
+ * Starting with the most frequent k-mer, the adapter is extended to the left as long as one extension dominates,
+ * which ends at the adapter start, where the reads continue with the varying inserts. It is extended to the right
+ * the same way, over the sample index, up to where the reads end.
+ *
+ * The assembled sequence is only reported if most reads containing its first k-mer end within it, as the reads of
+ * a repeat of the inserts continue with the flanks of the repeat instead. It is then cut to
+ * {@link #MAX_ADAPTER_LENGTH} nucleotides.
+ */
+public class AdapterDetector {
+
+	public static final int K = 10;
+	//the length of the default adapters, longer sequences run into the sample index
+	public static final int MAX_ADAPTER_LENGTH = 34;
+	//the share of the sampled reads which have to end with the adapter
+	public static final double MIN_FREQUENCY = 0.005;
+	//the share of the reads with the start of the adapter which have to end within the assembled sequence
+	public static final double MIN_TERMINAL = 0.5;
+	//an extension has to be found in this share of the reads of all four extensions
+	public static final double MIN_DOMINANCE = 0.8;
+	//k-mers with this many copies of one nucleotide are not used as seed, e.g. poly-G tails
+	private static final int LOW_COMPLEXITY = 8;
+	//the longest sequence assembled in each direction
+	private static final int MAX_ASSEMBLY_LENGTH = 256;
+
+	private static final int MASK = (1 << (2 * K)) - 1;
+	//the last eight nucleotides of a k-mer
+	private static final int PERIOD_MASK = (1 << (2 * (K - 2))) - 1;
+	private static final char[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+	private final int[] counts = new int[1 << (2 * K)];
+
+	private static int code(char c) {
+		switch(c) {
+			case 'A':
+				return 0;
+			case 'C':
+				return 1;
+			case 'G':
+				return 2;
+			case 'T':
+				return 3;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * @param reads
+	 * @return the dominant 3' adapter of the reads, null if no adapter is found
+	 */
+	public String detect(Iterable<String> reads) {
+		int numReads = 0;
+		for(String read : reads) {
+			add(read);
+			numReads++;
+		}
+
+		String assembly = assemble();
+		if(assembly == null) {
+			return null;
+		}
+
+		int supporting = 0;
+		int terminal = 0;
+		String start = assembly.substring(0, K);
+		for(String read : reads) {
+			int position = read.indexOf(start);
+			if(position >= 0) {
+				supporting++;
+				if(endsWithin(read, position, assembly)) {
+					terminal++;
+				}
+			}
+		}
+		if(terminal < MIN_FREQUENCY * numReads || terminal < MIN_TERMINAL * supporting) {
+			return null;
+		}
+		return assembly.substring(0, Math.min(assembly.length(), MAX_ADAPTER_LENGTH));
+	}
+
+	/**
+	 * counts the k-mer at the 3' end of a read
+	 * @param read
+	 */
+	private void add(String read) {
+		if(read.length() < K) {
+			return;
+		}
+		int kmer = 0;
+		for(int i = read.length() - K; i < read.length(); i++) {
+			int code = code(read.charAt(i));
+			if(code < 0) {
+				return;
+			}
+			kmer = (kmer << 2) | code;
+		}
+		counts[kmer]++;
+	}
+
+	/**
+	 * @return true for k-mers with many copies of one nucleotide or ending with a repeat of two nucleotides
+	 */
+	private static boolean isLowComplexity(int kmer) {
+		int[] bases = new int[4];
+		for(int i = 0; i < K; i++) {
+			bases[(kmer >>> (2 * i)) & 3]++;
+		}
+		for(int count : bases) {
+			if(count >= LOW_COMPLEXITY) {
+				return true;
+			}
+		}
+		return ((kmer >>> 4) & (PERIOD_MASK >>> 4)) == (kmer & (PERIOD_MASK >>> 4));
+	}
+
+	/**
+	 * @return the sequence assembled around the most frequent k-mer, null if no k-mer was counted
+	 */
+	private String assemble() {
+		int seed = -1;
+		for(int kmer = 0; kmer < counts.length; kmer++) {
+			if(counts[kmer] > 0 && (seed < 0 || counts[kmer] > counts[seed]) && !isLowComplexity(kmer)) {
+				seed = kmer;
+			}
+		}
+		if(seed < 0) {
+			return null;
+		}
+
+		StringBuilder assembly = new StringBuilder(decode(seed));
+
+		//to the left up to the adapter start
+		int kmer = seed;
+		for(int i = 0; i < MAX_ASSEMBLY_LENGTH; i++) {
+			int best = -1;
+			int total = 0;
+			for(int code = 0; code < 4; code++) {
+				int previous = (code << (2 * (K - 1))) | (kmer >>> 2);
+				total += counts[previous];
+				if(best < 0 || counts[previous] > counts[best]) {
+					best = previous;
+				}
+			}
+			if(!dominates(best, total)) {
+				break;
+			}
+			assembly.insert(0, NUCLEOTIDES[best >>> (2 * (K - 1))]);
+			kmer = best;
+		}
+
+		//to the right up to the end of the reads
+		kmer = seed;
+		for(int i = 0; i < MAX_ASSEMBLY_LENGTH; i++) {
+			int best = -1;
+			int total = 0;
+			for(int code = 0; code < 4; code++) {
+				int next = ((kmer << 2) | code) & MASK;
+				total += counts[next];
+				if(best < 0 || counts[next] > counts[best]) {
+					best = next;
+				}
+			}
+			if(!dominates(best, total)) {
+				break;
+			}
+			assembly.append(NUCLEOTIDES[best & 3]);
+			kmer = best;
+		}
+		return assembly.toString();
+	}
+
+	/**
+	 * @return true if an extension of the assembly was found in more than one read and in most reads of all extensions
+	 */
+	private boolean dominates(int extension, int total) {
+		return counts[extension] > 1 && counts[extension] >= MIN_DOMINANCE * total;
+	}
+
+	/**
+	 * @return true if the read continues with the assembled sequence from a position up to its 3' end, allowing one
+	 * mismatch per ten nucleotides
+	 */
+	private static boolean endsWithin(String read, int position, String assembly) {
+		int length = read.length() - position;
+		if(length > assembly.length()) {
+			return false;
+		}
+		int mismatches = 0;
+		for(int i = 0; i < length; i++) {
+			if(read.charAt(position + i) != assembly.charAt(i)) {
+				mismatches++;
+			}
+		}
+		return mismatches <= length / 10;
+	}
+
+	private static String decode(int kmer) {
+		char[] sequence = new char[K];
+		for(int i = K - 1; i >= 0; i--) {
+			sequence[i] = NUCLEOTIDES[kmer & 3];
+			kmer >>>= 2;
+		}
+		return new String(sequence);
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+/**
+ * Decides cheaply if a read may contain the adapter, so the alignment can be skipped for reads it cannot clip.
+ *
+ * A read is only skipped if {@link Clipper#adapterCutoffIndex(SequenceAlignmentResults)} cannot accept the alignment,
+ * which needs a seed of {@link AdapterAutomaton} in the read: a 2-mer of the adapter ending at adapter position
+ * {@link AdapterAutomaton#MIN_SEED_END} or later, any 2-mer of the adapter at the 3' end of the read,
+ * or the first adapter nucleotide as the last one of the read.
+ * Most reads contain such a seed, so mainly low-complexity reads, e.g. poly-T reads for adapters without TT, are skipped.
+ * Reads and adapters with other nucleotides than A, C, G and T are always aligned.
+ */
+public class AdapterPrefilter {
+
+	private final String adapter;
+	private final AdapterAutomaton automaton;
+
+	public AdapterPrefilter(String adapter) {
+		this.adapter = adapter;
+		this.automaton = new AdapterAutomaton(new String[]{adapter});
+	}
+
+	public String adapter() {
+		return this.adapter;
+	}
+
+	/**
+	 * @param read
+	 * @return false if the alignment of the read and the adapter can be skipped
+	 */
+	public boolean mayContainAdapter(String read) {
+		return automaton.candidates(read) != 0;
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+/**
+ * Computes the alignment of {@link ScoreOnlyAlignment} with a traceback matrix restricted to a diagonal band.
+ *
+ * The best alignment ends in the highest scored cell of the whole matrix, so a first pass computes only the scores,
+ * keeping two columns. Each adapter nucleotide adds at most MATCH, so a cell can only lie on the path to the highest
+ * score if it reaches that score minus MATCH for every adapter nucleotide after it. The highest score found so far
+ * and the lower bound of {@link BitParallelAdapterSearch} are used for it. Every column starts at the adapter start,
+ * where an alignment can always begin, and ends below the last cell of the previous column which can still lead to
+ * the highest score, as soon as the gaps from there fall behind.
+ *
+ * A path with g gaps stays within g diagonals of its end, so the second pass fills the scores
+ * and origins only in a band of {@link #bandWidth()} diagonals on both sides of the end cell, up to the end cell.
+ * The traceback matrix has at most (adapter length + 2 * band width) columns of (2 * band width + 1) cells,
+ * independent of the read length.
+ *
+ * The result is the same as the one of the full alignment whenever its path lies inside the band.
+ * If the band does not reach the highest score, the path has left it and the full alignment is used.
+ */
+public class BandedScoreOnlyAlignment extends ScoreOnlyAlignment {
+
+	//cells outside of the band, low enough to never be chosen and far from an overflow
+	private static final int OUTSIDE = LOWEST_SCORE;
+
+	private final int bandWidth;
+
+	private byte[] band = new byte[0];
+	private int[] previous = new int[0];
+	private int[] current = new int[0];
+	//gives a lower bound of the highest score before the first pass
+	private BitParallelAdapterSearch search;
+
+	//the band of the last alignment
+	private int bandDiagonal;
+	private int bandFirstQueryIndex;
+	//false if the last alignment fell back to the full matrix
+	private boolean bandedTraceback;
+
+	/**
+	 * @param bandWidth the number of diagonals on each side of the end of the alignment, at least 1
+	 */
+	public BandedScoreOnlyAlignment(int bandWidth) {
+		if(bandWidth < 1) {
+			throw new RuntimeException("ERROR: The band width of the alignment has to be at least 1 ! Exiting ...");
+		}
+		this.bandWidth = bandWidth;
+	}
+
+	public int bandWidth() {
+		return this.bandWidth;
+	}
+
+	@Override
+	public void align(String query, String target, SequenceAlignmentResults results) {
+		int width = query.length();
+		int height = target.length();
+		if(width == 0 || height == 0) {
+			alignFull(query, target, results);
+			return;
+		}
+		resize(height);
+
+		//first pass: the highest scored cell
+		int lowerBound = lowerBound(query, target);
+		int highestScore = LOWEST_SCORE;
+		int highestQueryIndex = 0;
+		int highestTargetIndex = 0;
+
+		//the last cell of the previous column which may still lead to the highest score, the border is complete
+		int previousLast = height - 1;
+		for(int queryIndex = 0; queryIndex < width; queryIndex++) {
+			char q = query.charAt(queryIndex);
+			//a cell can only lead to the highest score if it reaches this plus MATCH for each following adapter nucleotide
+			int threshold = Math.max(lowerBound, highestScore) - MATCH * (height - 1);
+			int up = 0;
+			int last = -1;
+
+			for(int targetIndex = 0; targetIndex < height; targetIndex++) {
+				int left;
+				int upLeft;
+				if(queryIndex == 0) {
+					left = targetBorder(targetIndex);
+					upLeft = targetIndex == 0 ? 0 : targetBorder(targetIndex - 1);
+				} else {
+					left = targetIndex > previousLast ? OUTSIDE : previous[targetIndex];
+					if(targetIndex == 0) {
+						upLeft = 0;
+					} else {
+						upLeft = targetIndex - 1 > previousLast ? OUTSIDE : previous[targetIndex - 1];
+					}
+				}
+
+				int score = score(cell(upLeft + (q == target.charAt(targetIndex) ? MATCH : MISMATCH), up + GAP, leftScore(left, queryIndex, targetIndex)));
+				current[targetIndex] = score;
+				up = score;
+
+				if(score > highestScore) {
+					highestQueryIndex = queryIndex;
+					highestTargetIndex = targetIndex;
+					highestScore = score;
+				}
+
+				if(score >= threshold + MATCH * targetIndex) {
+					last = targetIndex;
+				} else if(targetIndex > previousLast) {
+					//further down only the gap from this cell continues, which falls further behind
+					break;
+				}
+			}
+
+			previousLast = last;
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		//second pass: the band around the diagonal of the highest scored cell
+		if(highestScore < lowerBound || fillBand(query, target, highestQueryIndex, highestTargetIndex) != highestScore) {
+			alignFull(query, target, results);
+			return;
+		}
+
+		results.reset();
+		results.setQuerySequence(query);
+		results.setTargetSequence(target);
+		bandedTraceback = true;
+		traceback(query, target, highestQueryIndex, highestTargetIndex, results);
+	}
+
+	/**
+	 * @return a lower bound of the highest score from the bit-parallel search, if it supports the adapter
+	 */
+	private int lowerBound(String query, String target) {
+		if(!BitParallelAdapterSearch.supports(target)) {
+			return LOWEST_SCORE;
+		}
+		if(search == null || !search.adapter().equals(target)) {
+			search = new BitParallelAdapterSearch(target);
+		}
+		return search.search(query);
+	}
+
+	/**
+	 * fills the origins of the band up to the end cell
+	 * @return the score of the end cell within the band
+	 */
+	private int fillBand(String query, String target, int endQueryIndex, int endTargetIndex) {
+		int bandSize = 2 * bandWidth + 1;
+		bandDiagonal = endQueryIndex - endTargetIndex;
+		bandFirstQueryIndex = Math.max(0, bandDiagonal - bandWidth);
+
+		int columns = endQueryIndex - bandFirstQueryIndex + 1;
+		if(band.length < columns * bandSize) {
+			band = new byte[columns * bandSize];
+		}
+
+		int score = OUTSIDE;
+		int previousLast = -1;
+		for(int queryIndex = bandFirstQueryIndex; queryIndex <= endQueryIndex; queryIndex++) {
+			char q = query.charAt(queryIndex);
+			int first = Math.max(0, queryIndex - bandDiagonal - bandWidth);
+			int last = Math.min(endTargetIndex, queryIndex - bandDiagonal + bandWidth);
+			int column = (queryIndex - bandFirstQueryIndex) * bandSize;
+			int up = first == 0 ? 0 : OUTSIDE;
+
+			for(int targetIndex = first; targetIndex <= last; targetIndex++) {
+				int left;
+				int upLeft;
+				if(queryIndex == 0) {
+					left = targetBorder(targetIndex);
+					upLeft = targetIndex == 0 ? 0 : targetBorder(targetIndex - 1);
+				} else {
+					left = (queryIndex == bandFirstQueryIndex || targetIndex > previousLast) ? OUTSIDE : previous[targetIndex];
+					if(targetIndex == 0) {
+						upLeft = 0;
+					} else {
+						upLeft = queryIndex == bandFirstQueryIndex ? OUTSIDE : previous[targetIndex - 1];
+					}
+				}
+
+				int cell = cell(upLeft + (q == target.charAt(targetIndex) ? MATCH : MISMATCH), up + GAP, leftScore(left, queryIndex, targetIndex));
+				score = score(cell);
+
+				current[targetIndex] = score;
+				band[column + targetIndex - queryIndex + bandDiagonal + bandWidth] = from(cell);
+				up = score;
+			}
+
+			previousLast = last;
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return score;
+	}
+
+	/**
+	 * the full alignment, its traceback follows the origins of the full matrix
+	 */
+	private void alignFull(String query, String target, SequenceAlignmentResults results) {
+		bandedTraceback = false;
+		super.align(query, target, results);
+	}
+
+	@Override
+	protected int origin(int queryIndex, int targetIndex, int height) {
+		if(!bandedTraceback) {
+			return super.origin(queryIndex, targetIndex, height);
+		}
+		return band[(queryIndex - bandFirstQueryIndex) * (2 * bandWidth + 1) + targetIndex - queryIndex + bandDiagonal + bandWidth];
+	}
+
+	private void resize(int height) {
+		if(previous.length < height) {
+			previous = new int[height];
+			current = new int[height];
+		}
+	}
+}
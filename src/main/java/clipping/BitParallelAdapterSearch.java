@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+/**
+ * Finds the alignment of {@link ScoreOnlyAlignment} faster by skipping the part of the read in front of the adapter,
+ * located with the bit-parallel approximate matching algorithm of Myers (in the formulation of Hyyr&ouml;).
+ *
+ * The edit distances of all adapter prefixes are kept in two bit vectors of one 64 bit word each,
+ * so every base of the read costs a constant number of word operations.
+ * An alignment ending at a read position with the edit distance d of the adapter scores at most
+ * MATCH * (adapter length - d), as every edit, including a skipped adapter start, costs at least one match.
+ * A full adapter occurrence with d edits or an adapter prefix at the end of the read scores at least MATCH per
+ * nucleotide and (MATCH - GAP) less per edit. The best alignment can only end where the upper bound reaches
+ * this lower bound, and a positive alignment spans at most (adapter length * (1 + MATCH / -GAP)) read positions.
+ * Only the read part from there to the last position reaching the lower bound is aligned.
+ *
+ * If the aligned part does not reach the lower bound, the whole read is aligned, so the result, including the
+ * counts and coordinates used by {@link Clipper#adapterCutoffIndex(SequenceAlignmentResults)}, is always the same as
+ * the one of the full alignment.
+ */
+public class BitParallelAdapterSearch {
+
+	public static final int MAX_ADAPTER_LENGTH = 64;
+
+	private static final int MATCH = ScoreOnlyAlignment.MATCH;
+	private static final int GAP = ScoreOnlyAlignment.GAP;
+
+	private final String adapter;
+	private final int length;
+	private final long[] peq = new long[128];
+	//the read positions an alignment can span
+	private final int span;
+
+	private final ScoreOnlyAlignment alignment = new ScoreOnlyAlignment();
+
+	//the edit distance of the whole adapter at each read position
+	private int[] distances = new int[0];
+
+	/**
+	 * @param adapter at most {@link #MAX_ADAPTER_LENGTH} nucleotides
+	 */
+	public BitParallelAdapterSearch(String adapter) {
+		if(!supports(adapter)) {
+			throw new RuntimeException("ERROR: The adapter " + adapter + " is not supported by the bit-parallel adapter search ! Exiting ...");
+		}
+		this.adapter = adapter;
+		this.length = adapter.length();
+		this.span = length + length * MATCH / -GAP + 1;
+
+		for(int i = 0; i < length; i++) {
+			peq[adapter.charAt(i)] |= 1L << i;
+		}
+	}
+
+	/**
+	 * @param adapter
+	 * @return true if the adapter fits into one word and contains no unknown nucleotides, which the alignment scores differently
+	 */
+	public static boolean supports(String adapter) {
+		if(adapter.length() == 0 || adapter.length() > MAX_ADAPTER_LENGTH) {
+			return false;
+		}
+		for(int i = 0; i < adapter.length(); i++) {
+			if(adapter.charAt(i) >= 128 || adapter.charAt(i) == 'N') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String adapter() {
+		return this.adapter;
+	}
+
+	/**
+	 * aligns the read like {@link ScoreOnlyAlignment#align(String, String, SequenceAlignmentResults)}
+	 * @param read
+	 * @param results filled with the counts and coordinates of the best alignment
+	 * @return the number of read positions which were not aligned, 0 if the whole read was aligned
+	 */
+	public int align(String read, SequenceAlignmentResults results) {
+		int n = read.length();
+		int lowerBound = search(read);
+
+		if(lowerBound > 0) {
+			int first = 0;
+			while(first < n && MATCH * (length - distances[first]) < lowerBound) {
+				first++;
+			}
+			int last = n - 1;
+			while(MATCH * (length - distances[last]) < lowerBound) {
+				last--;
+			}
+			int start = Math.max(0, first - span);
+			if(start > 0 || last < n - 1) {
+				if(alignment.align(read, start, last + 1, adapter, results) >= lowerBound) {
+					return n - (last + 1 - start);
+				}
+			}
+		}
+
+		alignment.align(read, adapter, results);
+		return 0;
+	}
+
+	/**
+	 * computes the edit distances of the adapter at every read position
+	 * @param read
+	 * @return a lower bound of the score of the best alignment, not positive if there may be no positive alignment
+	 */
+	int search(String read) {
+		int n = read.length();
+		if(distances.length < n) {
+			distances = new int[n];
+		}
+
+		long highBit = 1L << (length - 1);
+		long pv = -1L;
+		long mv = 0L;
+		int score = length;
+		int minDistance = length;
+
+		for(int j = 0; j < n; j++) {
+			char c = read.charAt(j);
+			long eq = c < 128 ? peq[c] : 0L;
+
+			long xv = eq | mv;
+			long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+
+			if((ph & highBit) != 0) {
+				score++;
+			} else if((mh & highBit) != 0) {
+				score--;
+			}
+
+			//the distance of the empty prefix is 0 at every position of the read
+			ph <<= 1;
+			mh <<= 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+
+			distances[j] = score;
+			minDistance = Math.min(minDistance, score);
+		}
+
+		//the score of the best full adapter occurrence or adapter prefix at the end of the read is at least this
+		int lowerBound = MATCH * length - (MATCH - GAP) * minDistance;
+		int distance = 0;
+		for(int i = 1; i < length; i++) {
+			long bit = 1L << (i - 1);
+			if((pv & bit) != 0) {
+				distance++;
+			} else if((mv & bit) != 0) {
+				distance--;
+			}
+			lowerBound = Math.max(lowerBound, MATCH * i - (MATCH - GAP) * distance);
+		}
+		return lowerBound;
+	}
+}
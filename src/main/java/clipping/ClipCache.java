@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+/**
+ * A bounded cache of the clipping results of read sequences, for libraries with many duplicated reads.
+ *
+ * The sequences are stored by open addressing on a 64 bit hash. A sequence is looked up in a window of
+ * {@link #PROBES} slots starting at its hash and verified by comparing it. If the window is full, an entry
+ * is evicted like by a CLOCK: the entries of the window get a second chance if they were used since they were
+ * passed last. Entries are only ever replaced, so a lookup can stop at the first empty slot.
+ *
+ * A cache is not thread safe, each clipper has its own.
+ */
+public class ClipCache {
+
+	public static final int PROBES = 8;
+	public static final int MAX_ENTRIES = 1 << 28;
+
+	private final int mask;
+	private final long[] hashes;
+	private final String[] sequences;
+	private final int[] cutoffs;
+	private final int[] adapters;
+	private final boolean[] referenced;
+
+	//the results of the last hit
+	private int cutoff;
+	private int adapter;
+
+	/**
+	 * @param entries the number of sequences to cache, rounded up to a power of two
+	 */
+	public ClipCache(int entries) {
+		int capacity = Integer.highestOneBit(Math.max(PROBES, entries - 1) << 1);
+		this.mask = capacity - 1;
+		this.hashes = new long[capacity];
+		this.sequences = new String[capacity];
+		this.cutoffs = new int[capacity];
+		this.adapters = new int[capacity];
+		this.referenced = new boolean[capacity];
+	}
+
+	private static long hash(String sequence) {
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < sequence.length(); i++) {
+			h = (h ^ sequence.charAt(i)) * 0x100000001b3L;
+		}
+		//spreads the bits of the FNV-1a hash over the slot index
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @param sequence
+	 * @return true if the sequence is cached, its results are available by {@link #cutoff()} and {@link #adapter()}
+	 */
+	public boolean lookup(String sequence) {
+		long h = hash(sequence);
+		for(int probe = 0; probe < PROBES; probe++) {
+			int slot = (int)(h + probe) & mask;
+			if(sequences[slot] == null) {
+				return false;
+			}
+			if(hashes[slot] == h && sequences[slot].equals(sequence)) {
+				referenced[slot] = true;
+				cutoff = cutoffs[slot];
+				adapter = adapters[slot];
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * caches the results of a sequence, which is not cached yet
+	 * @param sequence
+	 * @param cutoff the index the sequence is clipped at
+	 * @param adapter the index of the adapter found
+	 * @return true if another sequence was evicted
+	 */
+	public boolean put(String sequence, int cutoff, int adapter) {
+		long h = hash(sequence);
+		int home = (int)h & mask;
+		int slot = -1;
+		boolean evicted = false;
+		for(int probe = 0; probe < PROBES; probe++) {
+			int candidate = (home + probe) & mask;
+			if(sequences[candidate] == null) {
+				slot = candidate;
+				break;
+			}
+		}
+		if(slot < 0) {
+			//the first entry of the window which was not used since it was passed, after one round all were passed
+			for(int probe = 0; slot < 0; probe = (probe + 1) % PROBES) {
+				int candidate = (home + probe) & mask;
+				if(referenced[candidate]) {
+					referenced[candidate] = false;
+				} else {
+					slot = candidate;
+				}
+			}
+			evicted = true;
+		}
+		hashes[slot] = h;
+		sequences[slot] = sequence;
+		cutoffs[slot] = cutoff;
+		adapters[slot] = adapter;
+		referenced[slot] = false;
+		return evicted;
+	}
+
+	public void clear() {
+		for(int slot = 0; slot <= mask; slot++) {
+			sequences[slot] = null;
+			referenced[slot] = false;
+		}
+	}
+
+	public int cutoff() {
+		return this.cutoff;
+	}
+
+	public int adapter() {
+		return this.adapter;
+	}
+
+	public int capacity() {
+		return this.mask + 1;
+	}
+}
@@ -22,6 +22,8 @@ import trimming.EndTrimmer;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * 
@@ -30,7 +32,7 @@ import java.io.IOException;
  */
 public class Clipper {
 
-	private String adapter = "CCTTAAGG";
+	private Adapter[] adapters = {new Adapter("CCTTAAGG", "CCTTAAGG")};
 	private String adapterType = "forward";
 	private int minLength = 5;
 	private boolean discardUnknownBases = true;
@@ -47,16 +49,64 @@ public class Clipper {
 	private long countDiscardedNoAdapterFound = 0; // -c option
 	private long countDiscardedAdapterFound = 0; // -C option
 	private long countDiscardedN = 0; // -n option
+	private long countSkippedAlignment = 0; // no adapter seed
+	private long countExactAdapter = 0;
+	private long countAligned = 0;
+	private long countAlignedAroundAdapter = 0; // bit-parallel engine, the read parts away from the adapter are skipped
+	private long[] countAdapterFound = new long[1];
+	private long countCacheLookups = 0;
+	private long countCacheHits = 0;
+	private long countCacheEvictions = 0;
 	
 	private EndTrimmer trimmer;
 	private FastX fastx;
+	//the alignments and their matrices are reused for all reads of this clipper
+	private HalfLocalSequenceAlignment align = new HalfLocalSequenceAlignment();
+	private ScoreOnlyAlignment scoreOnlyAlign = ScoreOnlyAlignment.create(false);
+	private SequenceAlignmentResults scoreOnlyResults = new SequenceAlignmentResults();
+	private ClippingEngine engine = ClippingEngine.ALIGNMENT;
+	//the searches of each adapter are created when they are needed first
+	private BitParallelAdapterSearch[] bitParallelSearches = new BitParallelAdapterSearch[1];
+	private ExactAdapterSearch[] exactSearches = new ExactAdapterSearch[1];
+	private AdapterAutomaton automaton = null;
+	//the adapter found by the last search of several adapters
+	private int foundAdapter = -1;
+	private int cacheSize = 0;
+	private ClipCache cache = null;
+	private boolean adapterPrefilter = false;
+	private AdapterPrefilter prefilter = null;
+	//the counters of the adapter searches are only logged on request or if a non-default engine is used
+	private boolean verbose = false;
 	
 	public Clipper(MergeSettings settings) {
 		trimmer = new EndTrimmer(settings);
+		verbose = settings.verbose();
 	}
 	
 	public void setAdapter(String adapter) {
-		this.adapter = adapter;
+		setAdapters(Collections.singletonList(new Adapter(adapter, adapter)));
+	}
+	
+	/**
+	 * @param adapters the adapters to clip, reads are clipped at the first position any of them is found
+	 */
+	public void setAdapters(List<Adapter> adapters) {
+		this.adapters = adapters.toArray(new Adapter[adapters.size()]);
+		this.countAdapterFound = new long[this.adapters.length];
+		this.bitParallelSearches = new BitParallelAdapterSearch[this.adapters.length];
+		this.exactSearches = new ExactAdapterSearch[this.adapters.length];
+		//the automaton is built by init, or here if the adapters are replaced afterwards
+		this.automaton = (this.adapters.length > 1 && fastx != null) ? createAutomaton() : null;
+		if(cache != null) {
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * @param entries the number of read sequences whose clipping results are cached, 0 for no cache
+	 */
+	public void setCacheSize(int entries) {
+		this.cacheSize = entries;
 	}
 	
 	public void setAdapterType(String adapterType) {
@@ -89,30 +139,177 @@ public class Clipper {
 	
 	public void setDebug(boolean debug) {
 		this.debug = debug;
+		this.align.setRecordAlignment(debug);
 	}
 	
 	public void setMinimumAdapterLength(int minimumAdapterLength) {
 		this.minimumAdapterLength = minimumAdapterLength;
 	}
 	
-	public Read clip(Read read) throws Exception {
-		fastx.readNextRecord(read);
-		readsCount = fastx.getReadsCount();
+	public void setEngine(ClippingEngine engine) {
+		this.engine = engine;
+	}
+	
+	/**
+	 * @param adapterPrefilter true if the alignment is skipped for reads without an adapter seed
+	 */
+	public void setAdapterPrefilter(boolean adapterPrefilter) {
+		this.adapterPrefilter = adapterPrefilter;
+	}
+	
+	/**
+	 * @param vectorized true if the alignment should use SIMD instructions, if the vector module is available
+	 */
+	public void setVectorizedAlignment(boolean vectorized) {
+		this.scoreOnlyAlign = ScoreOnlyAlignment.create(vectorized);
+	}
+	
+	/**
+	 * @param bandWidth the number of diagonals the traceback of the alignment is restricted to on each side of its end, 0 for the full matrix
+	 */
+	public void setAlignmentBand(int bandWidth) {
+		if(bandWidth > 0) {
+			this.scoreOnlyAlign = new BandedScoreOnlyAlignment(bandWidth);
+		}
+	}
+	
+	public boolean vectorizedAlignment() {
+		return this.scoreOnlyAlign.vectorized();
+	}
+	
+	/**
+	 * @param query
+	 * @return the index the read has to be clipped at, 0 if it only consists of adapter, -1 if no adapter was found
+	 */
+	private int findAdapter(String query) {
+		if(adapters.length == 1) {
+			return findAdapter(query, 0);
+		}
 		
-		String query = fastx.nucleotides();
-		String target = adapter;
+		//only the adapters with a seed in the read are aligned
+		long candidates = automaton.candidates(query);
+		if(candidates == 0) {
+			countSkippedAlignment += readsCount;
+			return -1;
+		}
+		
+		int cutoff = -1;
+		int found = -1;
+		foundAdapter = -1;
+		for(int a = 0; a < adapters.length; a++) {
+			if((candidates & (1L << a)) != 0) {
+				int index = findAdapter(query, a);
+				if(index != -1 && (cutoff == -1 || index < cutoff)) {
+					cutoff = index;
+					found = a;
+				}
+			}
+		}
+		if(found != -1) {
+			countAdapterFound[found] += readsCount;
+		}
+		foundAdapter = found;
+		return cutoff;
+	}
+	
+	private AdapterAutomaton createAutomaton() {
+		String[] sequences = new String[adapters.length];
+		for(int a = 0; a < adapters.length; a++) {
+			sequences[a] = adapters[a].sequence();
+		}
+		return new AdapterAutomaton(sequences);
+	}
+	
+	/**
+	 * @param query
+	 * @param adapterIndex
+	 * @return the index the read has to be clipped at for one adapter, 0 if it only consists of adapter, -1 if no adapter was found
+	 */
+	private int findAdapter(String query, int adapterIndex) {
+		String target = adapters[adapterIndex].sequence();
+		
+		//several adapters are prefiltered by the automaton
+		if(prefilter != null && adapters.length == 1) {
+			if(!prefilter.adapter().equals(target)) {
+				prefilter = new AdapterPrefilter(target);
+			}
+			if(!prefilter.mayContainAdapter(query)) {
+				countSkippedAlignment += readsCount;
+				return -1;
+			}
+		}
+		
+		if(!debug && ExactAdapterSearch.supports(target)) {
+			if(exactSearches[adapterIndex] == null) {
+				exactSearches[adapterIndex] = new ExactAdapterSearch(target);
+			}
+			if(exactSearches[adapterIndex].find(query, scoreOnlyResults) == ExactAdapterSearch.FULL_ADAPTER) {
+				countExactAdapter += readsCount;
+				return adapterCutoffIndex(scoreOnlyResults);
+			}
+		}
 		
-		HalfLocalSequenceAlignment align = new HalfLocalSequenceAlignment();
-		align.align(query, target);
+		countAligned += readsCount;
+		SequenceAlignmentResults results;
+		if(engine == ClippingEngine.BIT_PARALLEL && !debug && BitParallelAdapterSearch.supports(target) && scoreOnlyAlign.supports(query, target)) {
+			if(bitParallelSearches[adapterIndex] == null) {
+				bitParallelSearches[adapterIndex] = new BitParallelAdapterSearch(target);
+			}
+			if(bitParallelSearches[adapterIndex].align(query, scoreOnlyResults) > 0) {
+				countAlignedAroundAdapter += readsCount;
+			}
+			results = scoreOnlyResults;
+		} else if(!debug && scoreOnlyAlign.supports(query, target)) {
+			scoreOnlyAlign.align(query, target, scoreOnlyResults);
+			results = scoreOnlyResults;
+		} else {
+			align.align(query, target);
+			results = align.results();
+		}
 		
 		if(debug) {
 			align.printMatrix();
 			align.results().print();
 		}
 		
+		return adapterCutoffIndex(results);
+	}
+	
+	/**
+	 * looks the result of the read sequence up in the cache before the adapters are searched
+	 * @param query
+	 * @return the index the read has to be clipped at, 0 if it only consists of adapter, -1 if no adapter was found
+	 */
+	private int cachedFindAdapter(String query) {
+		if(cache == null || debug) {
+			return findAdapter(query);
+		}
+		
+		countCacheLookups++;
+		if(cache.lookup(query)) {
+			countCacheHits++;
+			if(cache.adapter() != -1) {
+				countAdapterFound[cache.adapter()] += readsCount;
+			}
+			return cache.cutoff();
+		}
+		
+		int cutoff = findAdapter(query);
+		if(cache.put(query, cutoff, adapters.length > 1 ? foundAdapter : -1)) {
+			countCacheEvictions++;
+		}
+		return cutoff;
+	}
+	
+	public Read clip(Read read) throws Exception {
+		fastx.readNextRecord(read);
+		readsCount = fastx.getReadsCount();
+		
+		String query = fastx.nucleotides();
+		
 		countInput += readsCount;
 		
-		i = adapterCutoffIndex(align.results());
+		i = cachedFindAdapter(query);
 		
 		if(i != -1 && i > 0) {
 			i += keepDelta;
@@ -167,6 +364,15 @@ public class Clipper {
 	public void init() {
 		fastx = new FastX();
 		fastx.init(!discardUnknownBases, true, true);
+		if(adapterPrefilter) {
+			prefilter = new AdapterPrefilter(adapters[0].sequence());
+		}
+		if(adapters.length > 1) {
+			automaton = createAutomaton();
+		}
+		if(cacheSize > 0) {
+			cache = new ClipCache(cacheSize);
+		}
 	}
 	
 	public int adapterCutoffIndex(SequenceAlignmentResults alignmentResults) {
@@ -203,6 +409,29 @@ public class Clipper {
 		return -1; 
 	}
 
+	/**
+	 * adds the clipping statistics of another clipper, e.g. of a worker thread, to this one
+	 * @param other
+	 */
+	public void addStatistics(Clipper other) {
+		countInput += other.countInput;
+		countDiscardedTooShort += other.countDiscardedTooShort;
+		countDiscardedAdapterAtIndexZero += other.countDiscardedAdapterAtIndexZero;
+		countDiscardedNoAdapterFound += other.countDiscardedNoAdapterFound;
+		countDiscardedAdapterFound += other.countDiscardedAdapterFound;
+		countDiscardedN += other.countDiscardedN;
+		countSkippedAlignment += other.countSkippedAlignment;
+		countExactAdapter += other.countExactAdapter;
+		countAligned += other.countAligned;
+		countAlignedAroundAdapter += other.countAlignedAroundAdapter;
+		countCacheLookups += other.countCacheLookups;
+		countCacheHits += other.countCacheHits;
+		countCacheEvictions += other.countCacheEvictions;
+		for(int a = 0; a < countAdapterFound.length && a < other.countAdapterFound.length; a++) {
+			countAdapterFound[a] += other.countAdapterFound[a];
+		}
+	}
+
 	public void outputStats(BufferedWriter logWriter) throws IOException {
 		synchronized(logWriter) {
 			
@@ -249,6 +478,33 @@ public class Clipper {
 				logWriter.write("- Discarded containing N: " + Long.toString(countDiscardedN));
 				logWriter.newLine();
 			}
+			if(cacheSize > 0) {
+				double percHits = countCacheLookups > 0 ? Math.round(((double)countCacheHits/countCacheLookups) * 10000.) / 100. : 0;
+				logWriter.write("- Cache hits: " + Long.toString(countCacheHits) + " of " + Long.toString(countCacheLookups) + " lookups (" + percHits + " %)");
+				logWriter.newLine();
+				logWriter.write("- Cache evictions: " + Long.toString(countCacheEvictions));
+				logWriter.newLine();
+			}
+			if(adapters.length > 1) {
+				for(int a = 0; a < adapters.length; a++) {
+					logWriter.write("- Adapter " + adapters[a].name() + " found: " + Long.toString(countAdapterFound[a]));
+					logWriter.newLine();
+				}
+			}
+			if(adapterPrefilter || adapters.length > 1) {
+				logWriter.write("- Alignment skipped (no adapter seed): " + Long.toString(countSkippedAlignment));
+				logWriter.newLine();
+			}
+			if(verbose || engine != ClippingEngine.ALIGNMENT) {
+				logWriter.write("- Exact adapter found: " + Long.toString(countExactAdapter));
+				logWriter.newLine();
+				logWriter.write("- Aligned: " + Long.toString(countAligned));
+				logWriter.newLine();
+			}
+			if(engine == ClippingEngine.BIT_PARALLEL) {
+				logWriter.write("- Aligned only around the adapter: " + Long.toString(countAlignedAroundAdapter));
+				logWriter.newLine();
+			}
 			
 			logWriter.newLine();
 		}
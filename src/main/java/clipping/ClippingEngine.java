@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+/**
+ * The algorithms used to find the adapter in a read.
+ */
+public enum ClippingEngine {
+	//the half local alignment of the read and the adapter
+	ALIGNMENT("alignment"),
+	//the same alignment of the read part located by the bit-parallel approximate search, see BitParallelAdapterSearch
+	BIT_PARALLEL("bitparallel");
+
+	private final String optionName;
+
+	ClippingEngine(String optionName) {
+		this.optionName = optionName;
+	}
+
+	public String optionName() {
+		return this.optionName;
+	}
+
+	/**
+	 * @param name the name used on the command line
+	 * @return
+	 */
+	public static ClippingEngine parse(String name) {
+		for(ClippingEngine engine : values()) {
+			if(engine.optionName.equalsIgnoreCase(name)) {
+				return engine;
+			}
+		}
+		throw new RuntimeException("ERROR: Unknown clipping engine " + name + " ! Exiting ...");
+	}
+}
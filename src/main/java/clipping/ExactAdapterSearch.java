@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+/**
+ * Finds error free adapters in reads without an alignment.
+ *
+ * The reads are scanned with the Knuth-Morris-Pratt automaton of the adapter, which finds the first
+ * occurrence of the full adapter in a single pass.
+ *
+ * The results are only reported if they are the same as the ones of {@link HalfLocalSequenceAlignment}:
+ * no alignment scores more than the number of adapter nucleotides it covers, so the first full occurrence
+ * of the adapter is the best alignment. An adapter prefix at the 3' end of the read is left to the alignment:
+ * it is only the best alignment if no other part of the read scores as much, and the edit distances of the
+ * adapter bound these scores too loosely, as gaps and skipped adapter nucleotides cost more or less than a mismatch.
+ */
+public class ExactAdapterSearch {
+
+	public static final int INCONCLUSIVE = 0;
+	public static final int FULL_ADAPTER = 1;
+
+	private final String adapter;
+	//the length of the longest proper prefix of adapter[0..i] which is also a suffix of it
+	private final int[] border;
+
+	public ExactAdapterSearch(String adapter) {
+		this.adapter = adapter;
+		this.border = new int[adapter.length()];
+
+		int length = 0;
+		for(int i = 1; i < adapter.length(); i++) {
+			while(length > 0 && adapter.charAt(i) != adapter.charAt(length)) {
+				length = border[length - 1];
+			}
+			if(adapter.charAt(i) == adapter.charAt(length)) {
+				length++;
+			}
+			border[i] = length;
+		}
+	}
+
+	/**
+	 * @param adapter
+	 * @return true if exact matches of the adapter are scored like by the alignment, which is not the case for 'N'
+	 */
+	public static boolean supports(String adapter) {
+		return adapter.length() > 0 && adapter.indexOf('N') < 0;
+	}
+
+	public String adapter() {
+		return this.adapter;
+	}
+
+	/**
+	 * @param read
+	 * @param results filled with the alignment of the adapter, if one is found
+	 * @return {@link #FULL_ADAPTER} or {@link #INCONCLUSIVE} if the read has to be aligned
+	 */
+	public int find(String read, SequenceAlignmentResults results) {
+		int adapterLength = adapter.length();
+		int length = 0;
+		for(int i = 0; i < read.length(); i++) {
+			char c = read.charAt(i);
+			while(length > 0 && c != adapter.charAt(length)) {
+				length = border[length - 1];
+			}
+			if(c == adapter.charAt(length)) {
+				length++;
+			}
+			if(length == adapterLength) {
+				fill(read, i - adapterLength + 1, adapterLength, results);
+				return FULL_ADAPTER;
+			}
+		}
+		return INCONCLUSIVE;
+	}
+
+	private void fill(String read, int queryStart, int length, SequenceAlignmentResults results) {
+		results.reset();
+		results.setQuerySequence(read);
+		results.setTargetSequence(adapter);
+		results.setQueryStart(queryStart);
+		results.setQueryEnd(queryStart + length - 1);
+		results.setTargetStart(0);
+		results.setTargetEnd(length - 1);
+		results.setMatches(length);
+		results.setScore(length);
+		results.setQuerySize(read.length());
+		results.setTargetSize(adapter.length());
+	}
+}
@@ -53,8 +53,15 @@ public class HalfLocalSequenceAlignment extends SequenceAlignment {
 		}
 	}
 	
+	/**
+	 * traces the alignment back from a point of the matrix, the results object of this alignment is reused
+	 * @param queryStart
+	 * @param targetStart
+	 * @return
+	 */
 	public SequenceAlignmentResults findOptimalAlignmentFromPoint(int queryStart, int targetStart) {
-		SequenceAlignmentResults results = new SequenceAlignmentResults();
+		SequenceAlignmentResults results = this.alignmentResults;
+		results.reset();
 		
 		results.setQuerySequence(querySequence());
 		results.setTargetSequence(targetSequence());
@@ -65,6 +72,11 @@ public class HalfLocalSequenceAlignment extends SequenceAlignment {
 		results.setQueryEnd(queryIndex);
 		results.setTargetEnd(targetIndex);
 		
+		//the reused matrices contain old values if one of the sequences is empty
+		if(width == 0 || height == 0) {
+			queryIndex = -1;
+		}
+		
 		while(queryIndex >= 0 && targetIndex >= 0) {
 			char qNuc = queryNucleotide(queryIndex);
 			char tNuc = targetNucleotide(targetIndex);
@@ -77,15 +89,19 @@ public class HalfLocalSequenceAlignment extends SequenceAlignment {
 			
 			switch(currentOrigin) {
 			case FROM_LEFT:
-				results.appendTargetAlignment('-');
-				results.appendQueryAlignment(qNuc);
+				if(recordAlignment) {
+					results.appendTargetAlignment('-');
+					results.appendQueryAlignment(qNuc);
+				}
 				results.setGaps(results.gaps()+1);
 				results.setScore(results.score() + gapPenalty());
 				queryIndex--;
 				break;
 			case FROM_UPPER_LEFT:
-				results.appendTargetAlignment(tNuc);
-				results.appendQueryAlignment(qNuc);
+				if(recordAlignment) {
+					results.appendTargetAlignment(tNuc);
+					results.appendQueryAlignment(qNuc);
+				}
 				switch(currentMatch) {
 				case 'N':
 					results.setNeutralMatches(results.neutralMatches()+1);
@@ -104,8 +120,10 @@ public class HalfLocalSequenceAlignment extends SequenceAlignment {
 				targetIndex--;
 				break;
 			case FROM_UPPER:
-				results.appendTargetAlignment(tNuc);
-				results.appendQueryAlignment('-');
+				if(recordAlignment) {
+					results.appendTargetAlignment(tNuc);
+					results.appendQueryAlignment('-');
+				}
 				results.setGaps(results.gaps()+1);
 				results.setScore(results.score()+gapPenalty());
 				targetIndex--;
@@ -179,8 +197,8 @@ public class HalfLocalSequenceAlignment extends SequenceAlignment {
 					origin = FROM_LEFT;
 				}
 				
-				scoreMatrix[queryIndex][targetIndex] = score;
-				originMatrix[queryIndex][targetIndex] = origin;
+				scoreMatrix[queryIndex * height + targetIndex] = score;
+				originMatrix[queryIndex * height + targetIndex] = origin;
 				
 				if(score > highestScore) {
 					highestScoredQueryIndex = queryIndex;
@@ -216,20 +234,32 @@ public class HalfLocalSequenceAlignment extends SequenceAlignment {
 	protected void populateMatchMatrix() {
 		for(int x = 0; x < matrixWidth(); x++) {
 			for(int y = 0; y < matrixHeight(); y++) {
-				matchMatrix[x][y] = matchValue(queryNucleotide(x), targetNucleotide(y));
+				matchMatrix[x * height + y] = matchValue(queryNucleotide(x), targetNucleotide(y));
 			}
 		}
 	}
 	
+	/**
+	 * sets the size of the matrices, the arrays are only reallocated if they are too small
+	 * @param width
+	 * @param height
+	 */
 	protected void resizeMatrix(int width, int height) {
-		if(matrixWidth() == width && matrixHeight() == height) {
-			return;
+		this.width = width;
+		this.height = height;
+		
+		int size = width * height;
+		if(scoreMatrix.length < size) {
+			scoreMatrix = new double[size];
+			originMatrix = new int[size];
+			matchMatrix = new char[size];
+		}
+		if(queryBorder.length < width) {
+			queryBorder = new double[width];
+		}
+		if(targetBorder.length < height) {
+			targetBorder = new double[height];
 		}
-		queryBorder = new double[width];
-		targetBorder = new double[height];
-		scoreMatrix = new double[width][height];
-		originMatrix = new int[width][height];
-		matchMatrix = new char[width][height];
 	}
 	
 	public SequenceAlignmentResults align(String query, String target) {
@@ -245,7 +275,10 @@ public class HalfLocalSequenceAlignment extends SequenceAlignment {
 	}
 	
 	protected void resetAlignmentResults() {
-		alignmentResults = new SequenceAlignmentResults();
+		if(alignmentResults == null) {
+			alignmentResults = new SequenceAlignmentResults();
+		}
+		alignmentResults.reset();
 		alignmentResults.setQuerySequence(querySequence());
 		alignmentResults.setTargetSequence(targetSequence());
 	}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+/**
+ * Computes the same half local alignment as {@link HalfLocalSequenceAlignment}, but only its counts and coordinates.
+ *
+ * The scores are scaled by 10 to integers, the match classes are computed while the matrix is filled,
+ * only two columns of scores are kept and the traceback is stored in a byte matrix.
+ * The workspace grows to the largest alignment and is reused, so aligning a read allocates nothing.
+ *
+ * The neutral score of 0.1 is not exact in floating point, so the rounding of the original alignment can break ties
+ * differently for sequences containing 'N'. Those sequences have to be aligned by {@link HalfLocalSequenceAlignment},
+ * see {@link #supports(String, String)}.
+ */
+public class ScoreOnlyAlignment {
+
+	public static final int SCALE = 10;
+
+	protected static final int MATCH = 1 * SCALE;
+	protected static final int MISMATCH = -1 * SCALE;
+	protected static final int GAP = -5 * SCALE;
+
+	//values of the original alignment, which mark impossible cells
+	protected static final int NO_GAP_IN_QUERY = -100000 * SCALE;
+	protected static final int LOWEST_SCORE = -1000000 * SCALE;
+
+	protected static final byte FROM_UPPER = SequenceAlignment.FROM_UPPER;
+	protected static final byte FROM_LEFT = SequenceAlignment.FROM_LEFT;
+	protected static final byte FROM_UPPER_LEFT = SequenceAlignment.FROM_UPPER_LEFT;
+
+	//the vectorized alignment is compiled separately and needs the incubating vector module at runtime
+	private static final String VECTORIZED_ALIGNMENT = "clipping.VectorScoreOnlyAlignment";
+
+	private byte[] origin = new byte[0];
+	private int[] previous = new int[0];
+	private int[] current = new int[0];
+	//the first query position of the last alignment
+	private int start = 0;
+
+	/**
+	 * @param vectorized true if the alignment should use SIMD instructions if they are available
+	 * @return the vectorized alignment, if requested and available, otherwise the scalar one
+	 */
+	public static ScoreOnlyAlignment create(boolean vectorized) {
+		if(vectorized) {
+			try {
+				return (ScoreOnlyAlignment)Class.forName(VECTORIZED_ALIGNMENT).getDeclaredConstructor().newInstance();
+			} catch(Exception e) {
+				//not compiled into this build
+			} catch(LinkageError e) {
+				//the module jdk.incubator.vector is not available
+			}
+		}
+		return new ScoreOnlyAlignment();
+	}
+
+	/**
+	 * @return true if this alignment uses SIMD instructions
+	 */
+	public boolean vectorized() {
+		return false;
+	}
+
+	/**
+	 * @param query
+	 * @param target
+	 * @return true if the alignment of the two sequences is guaranteed to be the same as the one of {@link HalfLocalSequenceAlignment}
+	 */
+	public boolean supports(String query, String target) {
+		return query.indexOf('N') < 0 && target.indexOf('N') < 0;
+	}
+
+	/**
+	 * aligns the query (the read) against the target (the adapter)
+	 * @param query
+	 * @param target
+	 * @param results filled with the counts and coordinates of the best alignment, the alignment strings stay empty
+	 */
+	public void align(String query, String target, SequenceAlignmentResults results) {
+		align(query, 0, query.length(), target, results);
+	}
+
+	/**
+	 * aligns a part of the query, the cells in front of it are impossible,
+	 * so only alignments starting at the first adapter nucleotide within the aligned part are found
+	 * @param query
+	 * @param start the first query position aligned, the coordinates of the results refer to the whole query
+	 * @param end the position after the last query position aligned
+	 * @param target
+	 * @param results filled with the counts and coordinates of the best alignment, the alignment strings stay empty
+	 * @return the highest score
+	 */
+	public int align(String query, int start, int end, String target, SequenceAlignmentResults results) {
+		int width = end - start;
+		int height = target.length();
+		resize(width, height);
+		this.start = start;
+
+		results.reset();
+		results.setQuerySequence(query);
+		results.setTargetSequence(target);
+
+		int highestScore = LOWEST_SCORE;
+		int highestQueryIndex = 0;
+		int highestTargetIndex = 0;
+
+		for(int queryIndex = start; queryIndex < end; queryIndex++) {
+			char q = query.charAt(queryIndex);
+			int row = (queryIndex - start) * height;
+			//the score above the first cell of a column is the query border, which is 0
+			int up = 0;
+			for(int targetIndex = 0; targetIndex < height; targetIndex++) {
+				int left = queryIndex == start ? border(targetIndex) : previous[targetIndex];
+				int upLeft;
+				if(targetIndex == 0) {
+					upLeft = 0;
+				} else {
+					upLeft = queryIndex == start ? border(targetIndex - 1) : previous[targetIndex - 1];
+				}
+
+				int cell = cell(upLeft + (q == target.charAt(targetIndex) ? MATCH : MISMATCH), up + GAP, leftScore(left, queryIndex, targetIndex));
+				int score = score(cell);
+
+				current[targetIndex] = score;
+				origin[row + targetIndex] = from(cell);
+				up = score;
+
+				if(score > highestScore) {
+					highestQueryIndex = queryIndex;
+					highestTargetIndex = targetIndex;
+					highestScore = score;
+				}
+			}
+
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		traceback(query, target, highestQueryIndex, highestTargetIndex, results);
+		return highestScore;
+	}
+
+	/**
+	 * the recurrence of a cell, preferring the diagonal, then the gap in the target like the original alignment
+	 * @param upLeftScore the score of the diagonal predecessor plus the score of the match or mismatch
+	 * @param upScore the score of the cell above plus the gap score
+	 * @param leftScore see {@link #leftScore(int, int, int)}
+	 * @return the score of the cell shifted by two bits, with its origin in the lowest two bits
+	 */
+	protected static int cell(int upLeftScore, int upScore, int leftScore) {
+		int score = upLeftScore;
+		int from = FROM_UPPER_LEFT;
+		if(upScore > score) {
+			score = upScore;
+			from = FROM_UPPER;
+		}
+		if(leftScore > score) {
+			score = leftScore;
+			from = FROM_LEFT;
+		}
+		return (score << 2) | from;
+	}
+
+	protected static int score(int cell) {
+		return cell >> 2;
+	}
+
+	protected static byte from(int cell) {
+		return (byte)(cell & 3);
+	}
+
+	/**
+	 * @return the score of a gap in the query after the cell left of this one, impossible where the original alignment forbids it
+	 */
+	protected static int leftScore(int left, int queryIndex, int targetIndex) {
+		return targetIndex > 3 && targetIndex - 3 > queryIndex ? NO_GAP_IN_QUERY : left + GAP;
+	}
+
+	protected static int targetBorder(int targetIndex) {
+		return targetIndex <= 3 ? 0 : GAP * (targetIndex - 3);
+	}
+
+	/**
+	 * @return the score left of the first aligned query position, the target border or an impossible cell
+	 */
+	private int border(int targetIndex) {
+		return start == 0 ? targetBorder(targetIndex) : LOWEST_SCORE;
+	}
+
+	/**
+	 * @param queryIndex
+	 * @param targetIndex
+	 * @param height the length of the target
+	 * @return where the score of a cell comes from
+	 */
+	protected int origin(int queryIndex, int targetIndex, int height) {
+		return origin[(queryIndex - start) * height + targetIndex];
+	}
+
+	/**
+	 * follows the origins from the highest scored cell and fills the results
+	 */
+	protected void traceback(String query, String target, int queryIndex, int targetIndex, SequenceAlignmentResults results) {
+		int height = target.length();
+		int matches = 0;
+		int mismatches = 0;
+		int gaps = 0;
+		int score = 0;
+
+		results.setQueryEnd(queryIndex);
+		results.setTargetEnd(targetIndex);
+
+		if(query.length() == 0 || height == 0) {
+			queryIndex = -1;
+		}
+
+		while(queryIndex >= 0 && targetIndex >= 0) {
+			results.setQueryStart(queryIndex);
+			results.setTargetStart(targetIndex);
+
+			switch(origin(queryIndex, targetIndex, height)) {
+			case FROM_LEFT:
+				gaps++;
+				score += GAP;
+				queryIndex--;
+				break;
+			case FROM_UPPER_LEFT:
+				if(query.charAt(queryIndex) == target.charAt(targetIndex)) {
+					matches++;
+					score += MATCH;
+				} else {
+					mismatches++;
+					score += MISMATCH;
+				}
+				queryIndex--;
+				targetIndex--;
+				break;
+			case FROM_UPPER:
+				gaps++;
+				score += GAP;
+				targetIndex--;
+				break;
+			}
+		}
+
+		results.setMatches(matches);
+		results.setMismatches(mismatches);
+		results.setGaps(gaps);
+		results.setScore(score / (double)SCALE);
+		results.setQuerySize(query.length());
+		results.setTargetSize(height);
+	}
+
+	private void resize(int width, int height) {
+		if(origin.length < width * height) {
+			origin = new byte[width * height];
+		}
+		if(previous.length < height) {
+			previous = new int[height];
+			current = new int[height];
+		}
+	}
+}
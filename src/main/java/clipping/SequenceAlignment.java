@@ -32,12 +32,18 @@ public abstract class SequenceAlignment {
 	private double mismatchPenalty;
 	private double neutralPenalty;
 	
-	protected double[][] scoreMatrix;
-	protected int[][] originMatrix;
-	protected char[][] matchMatrix;
+	//the matrices are stored row by row in flat arrays, which grow to the largest alignment and are reused
+	protected int width = 0;
+	protected int height = 0;
+	protected double[] scoreMatrix = new double[0];
+	protected int[] originMatrix = new int[0];
+	protected char[] matchMatrix = new char[0];
 	
-	protected double[] queryBorder;
-	protected double[] targetBorder;
+	protected double[] queryBorder = new double[0];
+	protected double[] targetBorder = new double[0];
+	
+	//the alignment strings are only needed for debugging
+	protected boolean recordAlignment = false;
 	
 	public SequenceAlignment() {
 		gapPenalty = -5;
@@ -47,15 +53,18 @@ public abstract class SequenceAlignment {
 	}
 	
 	public int matrixWidth() {
-		if(scoreMatrix == null)
-			return 0;
-		return scoreMatrix.length;
+		return this.width;
 	}
 	
 	public int matrixHeight() {
-		if(scoreMatrix == null)
-			return 0;
-		return scoreMatrix[0].length;
+		return this.height;
+	}
+	
+	/**
+	 * @param recordAlignment true if the aligned sequences should be part of the results
+	 */
+	public void setRecordAlignment(boolean recordAlignment) {
+		this.recordAlignment = recordAlignment;
 	}
 	
 	public double gapPenalty() {
@@ -102,15 +111,15 @@ public abstract class SequenceAlignment {
 	}
 	
 	public char match(int queryIndex, int targetIndex) {
-		return matchMatrix[queryIndex][targetIndex];
+		return matchMatrix[queryIndex * height + targetIndex];
 	}
 	
 	public int origin(int queryIndex, int targetIndex) {
-		return originMatrix[queryIndex][targetIndex];
+		return originMatrix[queryIndex * height + targetIndex];
 	}
 	
 	public double score(int queryIndex, int targetIndex) {
-		return scoreMatrix[queryIndex][targetIndex];
+		return scoreMatrix[queryIndex * height + targetIndex];
 	}
 	
 	public double safeScore(int queryIndex, int targetIndex) {
@@ -123,7 +132,7 @@ public abstract class SequenceAlignment {
 		if(targetIndex == -1) {
 			return queryBorder[queryIndex];
 		}
-		return scoreMatrix[queryIndex][targetIndex];
+		return scoreMatrix[queryIndex * height + targetIndex];
 	}
 	
 	public double nucleotideMatchScore(int queryIndex, int targetIndex) {
@@ -40,6 +40,13 @@ public class SequenceAlignmentResults {
 	private String targetSequence;
 	
 	public SequenceAlignmentResults() {
+		reset();
+	}
+	
+	/**
+	 * clears the results, so the object can be reused for the next alignment
+	 */
+	public void reset() {
 		this.querySize = 0;
 		this.queryStart = 0;
 		this.queryEnd = 0;
@@ -55,8 +62,13 @@ public class SequenceAlignmentResults {
 		
 		this.score = 0;
 		
-		this.queryAlignment = new StringBuffer();
-		this.targetAlignment = new StringBuffer();
+		//the buffers are created on demand, they are only filled in debug mode
+		if(this.queryAlignment != null) {
+			this.queryAlignment.setLength(0);
+		}
+		if(this.targetAlignment != null) {
+			this.targetAlignment.setLength(0);
+		}
 	}
 	
 	public void print() {
@@ -136,10 +148,16 @@ public class SequenceAlignmentResults {
 	}
 
 	public void appendTargetAlignment(char tNuc) {
+		if(this.targetAlignment == null) {
+			this.targetAlignment = new StringBuffer();
+		}
 		this.targetAlignment.append(tNuc);
 	}
 
 	public void appendQueryAlignment(char qNuc) {
+		if(this.queryAlignment == null) {
+			this.queryAlignment = new StringBuffer();
+		}
 		this.queryAlignment.append(qNuc);
 	}
 
@@ -172,6 +190,9 @@ public class SequenceAlignmentResults {
 	}
 	
 	private String reverse(StringBuffer sequence) {
+		if(sequence == null) {
+			return "";
+		}
 		StringBuffer sb = new StringBuffer(sequence);
 		sb.reverse();
 		return sb.toString();
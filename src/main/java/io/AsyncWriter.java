@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import threads.SpscRing;
+import threads.WaitStrategy;
+
+/**
+ * Writes filled output buffers to a stream (and thereby compresses them) on a dedicated thread.
+ * The buffers are handed over through a bounded lock-free ring and recycled afterwards.
+ * The thread has to be started with {@link #start()} before buffers are submitted.
+ */
+public class AsyncWriter extends Thread {
+
+	public static final int QUEUE_SIZE = 4;
+
+	private static class Batch {
+		private byte[] data;
+		private int length;
+	}
+
+	private final OutputStream out;
+	private final SpscRing<Batch> filled;
+	private final SpscRing<byte[]> free;
+	private final Batch endOfOutput = new Batch();
+	//the slots handed over to the ring, reused in turn: a full ring, the batch being written and the one being submitted
+	private final Batch[] slots = new Batch[QUEUE_SIZE + 2];
+	private int nextSlot = 0;
+
+	private volatile Throwable error = null;
+	private boolean closed = false;
+
+	public AsyncWriter(OutputStream out, String name) {
+		this(out, name, WaitStrategy.PARK);
+	}
+
+	public AsyncWriter(OutputStream out, String name, WaitStrategy waitStrategy) {
+		super(name);
+		this.out = out;
+		this.filled = new SpscRing<Batch>(QUEUE_SIZE, waitStrategy);
+		this.free = new SpscRing<byte[]>(QUEUE_SIZE + 1, waitStrategy);
+		for(int i = 0; i < slots.length; i++) {
+			slots[i] = new Batch();
+		}
+		setDaemon(true);
+	}
+
+	public void run() {
+		try {
+			Batch batch;
+			while((batch = filled.take()) != endOfOutput) {
+				if(error != null) {
+					//keep taking batches, so the producer is not blocked
+					continue;
+				}
+				try {
+					out.write(batch.data, 0, batch.length);
+				} catch(Throwable t) {
+					error = t;
+				}
+				free.offer(batch.data);
+			}
+
+			try {
+				out.flush();
+				out.close();
+			} catch(Throwable t) {
+				if(error == null) {
+					error = t;
+				}
+			}
+		} catch(Throwable t) {
+			if(error == null) {
+				error = t;
+			}
+		}
+	}
+
+	/**
+	 * hands a filled buffer over to the writing thread
+	 * @param data
+	 * @param length
+	 * @return an empty buffer of at least the same size
+	 * @throws IOException if writing a previous buffer failed, other failures of the writing thread are rethrown as they are
+	 */
+	public byte[] submit(byte[] data, int length) throws IOException {
+		checkError();
+		Batch batch = slots[nextSlot];
+		nextSlot = (nextSlot + 1) % slots.length;
+		batch.data = data;
+		batch.length = length;
+		try {
+			filled.put(batch);
+		} catch(InterruptedException e) {
+			throw new IOException(e);
+		}
+
+		byte[] buffer = free.poll();
+		if(buffer == null || buffer.length < data.length) {
+			buffer = new byte[data.length];
+		}
+		return buffer;
+	}
+
+	private void checkError() throws IOException {
+		Throwable t = error;
+		if(t instanceof IOException) {
+			throw (IOException)t;
+		}
+		if(t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		}
+		if(t instanceof Error) {
+			throw (Error)t;
+		}
+		if(t != null) {
+			throw new IOException(t);
+		}
+	}
+
+	/**
+	 * waits until all buffers are written and closes the stream
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			filled.put(endOfOutput);
+			join();
+		} catch(InterruptedException e) {
+			throw new IOException(e);
+		}
+		checkError();
+	}
+
+	/**
+	 * @return how often the producer had to wait for the writing thread
+	 */
+	public long getProducerStalls() {
+		return filled.getProducerStalls();
+	}
+
+	/**
+	 * @return how often the writing thread had to wait for the producer
+	 */
+	public long getWriterStalls() {
+		return filled.getConsumerStalls();
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a stream, e.g. the compressed bytes read from an input file.
+ * The counter may be read by any thread, but only one thread may read from the stream.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+	private volatile long bytesRead = 0;
+
+	public CountingInputStream(InputStream in) {
+		super(in);
+	}
+
+	public int read() throws IOException {
+		int b = super.read();
+		if(b >= 0) {
+			bytesRead++;
+		}
+		return b;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		if(n > 0) {
+			bytesRead += n;
+		}
+		return n;
+	}
+
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		bytesRead += skipped;
+		return skipped;
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+
+	public long getBytesRead() {
+		return this.bytesRead;
+	}
+}
@@ -21,17 +21,26 @@ import setting.MergeSettings;
 import trimming.QualityTrimmer;
 
 import java.io.*;
-import java.util.zip.GZIPOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DataHandler {
 
 	private MergeSettings settings;
 
-	private BufferedWriter bw = null;
-	private BufferedWriter mpwf = null;
-	private BufferedWriter mpwr = null;
+	private FastqWriter bw = null;
+	private FastqWriter mpwf = null;
+	private FastqWriter mpwr = null;
+
+	private List<AsyncWriter> writers = new ArrayList<AsyncWriter>();
 
 	private QualityTrimmer qt;
+	private Statistics stats = new Statistics();
+	//the statistics of merge workers, which are merged into the report at shutdown
+	private List<Statistics> workerStats = new ArrayList<Statistics>();
+
+	//the batch collecting the output of a merge worker
+	private OutputBatch batch = null;
 
 	private int currentOverlap = 0;
 
@@ -41,29 +50,72 @@ public class DataHandler {
 	}
 
 	public void setup() throws IOException {
-		this.bw = settings.getOutputWriter();
+		this.bw = new FastqWriter(createWriter(settings.getOutputStream(), "output writer"));
 
 		if(settings.handleMatePairsSeperatly()) {
 			File frf = settings.getMatePairFileForward();
 			File rrf = settings.getMatePairFileReverse();
 
-			if(frf.getName().endsWith(".gz")) {
-				mpwf = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(frf))));
-			} else {
-				mpwf = new BufferedWriter(new FileWriter(settings.getMatePairFileForward()));
-			}
-
-			if(rrf.getName().endsWith(".gz")) {
-				mpwr = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(rrf))));
-			} else {
-				mpwr = new BufferedWriter(new FileWriter(settings.getMatePairFileReverse()));
-			}
+			mpwf = new FastqWriter(createWriter(settings.openOutputStream(frf), "forward output writer"));
+			mpwr = new FastqWriter(createWriter(settings.openOutputStream(rrf), "reverse output writer"));
 		} else {
 			mpwf = bw;
 			mpwr = bw;
 		}
 	}
 
+	private AsyncWriter createWriter(OutputStream out, String name) {
+		AsyncWriter writer = new AsyncWriter(out, name, settings.getWaitStrategy());
+		writer.start();
+		writers.add(writer);
+		return writer;
+	}
+
+	/**
+	 * collects the output in memory instead of writing it to the output files,
+	 * the output is committed batch by batch via {@link #write(OutputBatch)}
+	 */
+	public void setupBatch() {
+		this.batch = new OutputBatch(settings.handleMatePairsSeperatly());
+		this.bw = batch.output;
+		this.mpwf = batch.forwardOutput;
+		this.mpwr = batch.reverseOutput;
+	}
+
+	/**
+	 * @return the output collected since the last call, a new batch is started
+	 */
+	public OutputBatch finishBatch() {
+		OutputBatch finished = this.batch;
+		setupBatch();
+		return finished;
+	}
+
+	/**
+	 * writes the output collected by another data handler to the output files
+	 * @param output
+	 * @throws IOException
+	 */
+	public void write(OutputBatch output) throws IOException {
+		output.output.transferTo(bw);
+		if(settings.handleMatePairsSeperatly()) {
+			output.forwardOutput.transferTo(mpwf);
+			output.reverseOutput.transferTo(mpwr);
+		}
+	}
+
+	public Statistics getStatistics() {
+		return this.stats;
+	}
+
+	/**
+	 * registers the statistics of a worker, they must not change after shutdown was called
+	 * @param workerStatistics
+	 */
+	public synchronized void addWorkerStatistics(Statistics workerStatistics) {
+		this.workerStats.add(workerStatistics);
+	}
+
 	public void writeMatePairReads(Read readF, Read readR) throws IOException {
 		boolean fOK = false;
 		boolean rOK = false;
@@ -76,13 +128,13 @@ public class DataHandler {
 		if(readF.sequence.length() >= minLength) {
 			fOK = true;
 		} else {
-			Statistics.increaseNotMergedForwardTooShort();
+			stats.increaseNotMergedForwardTooShort();
 		}
 
 		if(readR.sequence.length() >= minLength) {
 			rOK = true;
 		} else {
-			Statistics.increaseNotMergedReverseTooShort();
+			stats.increaseNotMergedReverseTooShort();
 		}
 
 		if(fOK && rOK) {
@@ -93,23 +145,23 @@ public class DataHandler {
 				writeRead(readF, "F_", mpwf);
 				writeRead(readR, "R_", mpwr);
 			}
-			Statistics.increaseReadPairsNotMerged();
+			stats.increaseReadPairsNotMerged();
 		} else if(fOK && !settings.removeSingleReads()) {
 			if(settings.handleMatePairsSeperatly()){
 				writeRead(readF, "F_", mpwf);
 			} else {
 				writeRead(readF, "F_", bw);
 			}
-			Statistics.increaseNumNotMergedForward();
+			stats.increaseNumNotMergedForward();
 		} else if(rOK && !settings.removeSingleReads()) {
 			if(settings.handleMatePairsSeperatly()){
 				writeRead(readR,"R_",mpwr);
 			} else {
 				writeRead(readR, "R_", bw);
 			}
-			Statistics.increaseNumNotMergedReverse();
+			stats.increaseNumNotMergedReverse();
 		} else {
-      Statistics.increaseMateTooShort();
+      stats.increaseMateTooShort();
     }
 	}
 
@@ -122,20 +174,20 @@ public class DataHandler {
 
 		if(read.sequence.length() < minLength | read.name.equals("null")) { //if its a null read, we remove it!
 			if(prefix.equals("M_")) {
-				Statistics.increaseMergedTooShort();
+				stats.increaseMergedTooShort();
 			} else if(prefix.equals("F_")) {
-				Statistics.increaseNoPartnerTooShortF();
+				stats.increaseNoPartnerTooShortF();
 			} else if(prefix.equals("R_")) {
-				Statistics.increaseNoPartnerTooShortR();
+				stats.increaseNoPartnerTooShortR();
 			}
 		} else {
 			if(prefix.equals("F_")) {
-				Statistics.increaseForwardReads();
+				stats.increaseForwardReads();
 			} else if(prefix.equals("R_")) {
-				Statistics.increaseReverseReads();
+				stats.increaseReverseReads();
 			} else if(prefix.equals("M_")) {
-				Statistics.increaseMergedReads();
-				Statistics.increaseMergingOverlap(getCurrentOverlap());
+				stats.increaseMergedReads();
+				stats.increaseMergingOverlap(getCurrentOverlap());
 			}
 
 			if(!settings.removeSingleReads())
@@ -163,21 +215,12 @@ public class DataHandler {
 		this.currentOverlap = overlap;
 	}
 
-	private void writeRead(Read read, String prefix, BufferedWriter writeOut) throws IOException {
-		StringBuffer result = new StringBuffer();
-		result.append(read.name.replaceFirst("@", "@"+prefix));
-		result.append("\n");
-		result.append(read.sequence);
-		result.append("\n");
-		result.append(read.empty);
-		result.append("\n");
-		result.append(read.quality);
-		result.append("\n");
-		writeOut.append(result);
-		writeOut.flush();
+	private void writeRead(Read read, String prefix, FastqWriter writeOut) throws IOException {
+		writeOut.write(read, prefix);
 	}
 
 	public synchronized void shutdown() throws IOException {
+		//closing waits until the writer threads have written all buffers
 		if(this.bw != null) {
 			this.bw.flush();
 			this.bw.close();
@@ -191,7 +234,17 @@ public class DataHandler {
 		}
 
 		synchronized(settings.getLogWriter()) {
-			Statistics.printStats(settings.getLogWriter(), settings.getFirstForwardRead());
+			if(settings.verbose()) {
+				for(AsyncWriter writer : writers) {
+					settings.getLogWriter().write("# " + writer.getName() + ": merging waited " + writer.getProducerStalls() + " times, writing waited " + writer.getWriterStalls() + " times");
+					settings.getLogWriter().newLine();
+				}
+			}
+			Statistics total = stats.snapshot();
+			for(Statistics s : workerStats) {
+				total.merge(s);
+			}
+			total.printStats(settings.getLogWriter(), settings.getFirstForwardRead());
 			settings.getLogWriter().flush();
 		}
 	}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A part of a FASTQ file that starts and ends at record boundaries
+ */
+public class FastqChunk {
+
+	private final ByteBuffer data;
+	private final long fileOffset;
+	private final long index;
+	private final int records;
+
+	public FastqChunk(ByteBuffer data, long fileOffset, long index, int records) {
+		this.data = data;
+		this.fileOffset = fileOffset;
+		this.index = index;
+		this.records = records;
+	}
+
+	public ByteBuffer data() {
+		return this.data;
+	}
+
+	public int length() {
+		return this.data.remaining();
+	}
+
+	public long fileOffset() {
+		return this.fileOffset;
+	}
+
+	/**
+	 * @return the position of this chunk in the file, starting with 0
+	 */
+	public long index() {
+		return this.index;
+	}
+
+	/**
+	 * @return the number of records in this chunk or -1 if the chunk was cut by size
+	 */
+	public int records() {
+		return this.records;
+	}
+
+	/**
+	 * copies the chunk into the given array, a larger array is returned if it does not fit
+	 * @param target
+	 * @return
+	 */
+	public byte[] copyTo(byte[] target) {
+		int length = length();
+		if(target == null || target.length < length) {
+			target = new byte[length];
+		}
+		data.duplicate().get(target, 0, length);
+		return target;
+	}
+}
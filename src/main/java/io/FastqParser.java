@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ASCII FASTQ parser working directly on bytes
+ *
+ * The input is read into one large buffer which is scanned for newlines,
+ * records are handed out as slices of this buffer (see {@link FastqRecord}).
+ * No charset decoding and no per-line objects are involved.
+ *
+ * Lines may be terminated by '\n' or "\r\n", the last line of the input
+ * does not need a terminator. Empty lines after the last record are ignored,
+ * a record with less than four lines at the end of the input is reported as an error.
+ */
+public class FastqParser {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+
+	private InputStream in;
+	private byte[] buffer;
+	private int position = 0; //first byte not yet handed out
+	private int limit = 0; //end of valid data in the buffer
+	private boolean eof = false;
+
+	//line ends of the current record relative to 'position'
+	private final int[] lineEnds = new int[4];
+
+	private long recordsParsed = 0;
+
+	public FastqParser(InputStream in) {
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	public FastqParser(InputStream in, int bufferSize) {
+		this.in = in;
+		this.buffer = new byte[Math.max(bufferSize, 1024)];
+	}
+
+	/**
+	 * parses the records of a fixed region, e.g. a chunk of a larger file
+	 * @param data
+	 * @param offset
+	 * @param length
+	 */
+	public FastqParser(byte[] data, int offset, int length) {
+		this.in = null;
+		this.buffer = data;
+		this.position = offset;
+		this.limit = offset + length;
+		this.eof = true;
+	}
+
+	public long recordsParsed() {
+		return this.recordsParsed;
+	}
+
+	/**
+	 * reads the next record into the given record object
+	 * @param record
+	 * @return false if the end of the input is reached
+	 * @throws IOException if the input ends within a record
+	 */
+	public boolean next(FastqRecord record) throws IOException {
+		int found = 0;
+		int scan = position;
+		boolean terminated = true;
+
+		while(found < 4) {
+			int newline = indexOf(LF, scan, limit);
+			if(newline >= 0) {
+				lineEnds[found++] = newline - position;
+				scan = newline + 1;
+				continue;
+			}
+
+			int scanned = scan - position;
+			if(!fill()) {
+				if(onlyLineBreaks(position, limit)) {
+					//clean end of the input
+					position = limit;
+					return false;
+				}
+				if(found == 3) {
+					//last line without line terminator
+					lineEnds[found++] = limit - position;
+					terminated = false;
+					break;
+				}
+				throw new IOException("Truncated FASTQ record at end of input after record " + recordsParsed + ": "
+						+ new String(buffer, position, Math.min(limit - position, 200), StandardCharsets.ISO_8859_1));
+			}
+			scan = position + scanned;
+		}
+
+		record.buffer = buffer;
+
+		int start = position;
+		int end = position + lineEnds[0];
+		record.nameOffset = start;
+		record.nameLength = lineLength(start, end);
+
+		start = end + 1;
+		end = position + lineEnds[1];
+		record.sequenceOffset = start;
+		record.sequenceLength = lineLength(start, end);
+
+		start = end + 1;
+		end = position + lineEnds[2];
+		record.separatorOffset = start;
+		record.separatorLength = lineLength(start, end);
+
+		start = end + 1;
+		end = position + lineEnds[3];
+		record.qualityOffset = start;
+		record.qualityLength = lineLength(start, end);
+
+		if(!terminated && record.qualityLength != record.sequenceLength) {
+			throw new IOException("Truncated FASTQ record at end of input: "
+					+ new String(buffer, record.nameOffset, record.nameLength, StandardCharsets.ISO_8859_1));
+		}
+
+		int next = terminated ? end + 1 : end;
+		record.length = next - position;
+		position = next;
+		recordsParsed++;
+
+		return true;
+	}
+
+	private int lineLength(int start, int end) {
+		if(end > start && buffer[end-1] == CR) {
+			return end - start - 1;
+		}
+		return end - start;
+	}
+
+	private boolean onlyLineBreaks(int from, int to) {
+		for(int i = from; i < to; i++) {
+			if(buffer[i] != LF && buffer[i] != CR) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int indexOf(byte b, int from, int to) {
+		byte[] buf = this.buffer;
+		for(int i = from; i < to; i++) {
+			if(buf[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * moves the unparsed rest to the front of the buffer and reads more data
+	 * the buffer is enlarged if a single record does not fit
+	 * @return false if no more data is available
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		if(eof) {
+			return false;
+		}
+
+		int remaining = limit - position;
+		if(position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, remaining);
+			position = 0;
+			limit = remaining;
+		}
+
+		if(limit == buffer.length) {
+			byte[] larger = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, larger, 0, limit);
+			buffer = larger;
+		}
+
+		int read = in.read(buffer, limit, buffer.length - limit);
+		while(read == 0) {
+			read = in.read(buffer, limit, buffer.length - limit);
+		}
+
+		if(read < 0) {
+			eof = true;
+			return false;
+		}
+
+		limit += read;
+		return true;
+	}
+
+	public void close() throws IOException {
+		if(in != null) {
+			in.close();
+		}
+	}
+}
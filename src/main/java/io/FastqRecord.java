@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+import java.nio.charset.StandardCharsets;
+
+import clipping.Read;
+
+/**
+ * A single FASTQ record as a set of (offset, length) slices into the
+ * buffer of the {@link FastqParser} that produced it.
+ *
+ * The slices are only valid until the next call of {@link FastqParser#next(FastqRecord)},
+ * use {@link #toRead()} to keep a record.
+ */
+public class FastqRecord {
+
+	byte[] buffer;
+
+	int nameOffset;
+	int nameLength;
+	int sequenceOffset;
+	int sequenceLength;
+	int separatorOffset;
+	int separatorLength;
+	int qualityOffset;
+	int qualityLength;
+
+	//number of bytes the record occupies in the input, including line terminators
+	int length;
+
+	public byte[] buffer() {
+		return this.buffer;
+	}
+
+	public int nameOffset() {
+		return this.nameOffset;
+	}
+
+	public int nameLength() {
+		return this.nameLength;
+	}
+
+	public int sequenceOffset() {
+		return this.sequenceOffset;
+	}
+
+	public int sequenceLength() {
+		return this.sequenceLength;
+	}
+
+	public int separatorOffset() {
+		return this.separatorOffset;
+	}
+
+	public int separatorLength() {
+		return this.separatorLength;
+	}
+
+	public int qualityOffset() {
+		return this.qualityOffset;
+	}
+
+	public int qualityLength() {
+		return this.qualityLength;
+	}
+
+	public int length() {
+		return this.length;
+	}
+
+	/**
+	 * copies the slices of this record into a new read
+	 * FASTQ is plain ASCII, so every byte maps to exactly one char
+	 * @return
+	 */
+	public Read toRead() {
+		return new Read(ascii(nameOffset, nameLength),
+				ascii(sequenceOffset, sequenceLength),
+				ascii(separatorOffset, separatorLength),
+				ascii(qualityOffset, qualityLength));
+	}
+
+	private String ascii(int offset, int length) {
+		return new String(buffer, offset, length, StandardCharsets.ISO_8859_1);
+	}
+}
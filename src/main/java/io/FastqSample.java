@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the first records of a FASTQ stream ahead, so they can be inspected before the stream is parsed.
+ * The sampled bytes are kept and replayed in front of the rest of the stream, so nothing is read twice.
+ */
+public class FastqSample {
+
+	private static final int CHUNK_SIZE = 1 << 16;
+	//the largest array the virtual machines allocate
+	private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+	private final InputStream in;
+	private byte[] buffer = new byte[CHUNK_SIZE];
+	private int length = 0;
+	private int records = 0;
+
+	/**
+	 * @param in
+	 * @param maxRecords the number of records to sample, fewer if the stream ends before or they do not fit into an array
+	 * @throws IOException
+	 */
+	public FastqSample(InputStream in, int maxRecords) throws IOException {
+		this.in = in;
+
+		long lines = 0;
+		long maxLines = 4L * maxRecords;
+		while(lines < maxLines) {
+			if(length == buffer.length) {
+				if(buffer.length == MAX_BUFFER_SIZE) {
+					break;
+				}
+				byte[] larger = new byte[(int)Math.min(2L * buffer.length, MAX_BUFFER_SIZE)];
+				System.arraycopy(buffer, 0, larger, 0, length);
+				buffer = larger;
+			}
+			int n = in.read(buffer, length, Math.min(CHUNK_SIZE, buffer.length - length));
+			if(n < 0) {
+				break;
+			}
+			for(int i = length; i < length + n; i++) {
+				if(buffer[i] == '\n') {
+					lines++;
+				}
+			}
+			length += n;
+		}
+		this.records = (int)Math.min(maxRecords, lines / 4);
+	}
+
+	/**
+	 * @return the number of complete records sampled
+	 */
+	public int records() {
+		return this.records;
+	}
+
+	/**
+	 * @return the sampled bytes followed by the rest of the stream
+	 */
+	public Replay replay() {
+		return new Replay(new ByteArrayInputStream(buffer, 0, length), in);
+	}
+
+	/**
+	 * the sampled bytes followed by the rest of the stream they were sampled from
+	 */
+	public static class Replay extends SequenceInputStream {
+
+		private final InputStream source;
+
+		private Replay(InputStream sample, InputStream source) {
+			super(sample, source);
+			this.source = source;
+		}
+
+		/**
+		 * @return the stream the sample was read from, e.g. for its statistics
+		 */
+		public InputStream source() {
+			return this.source;
+		}
+	}
+
+	/**
+	 * @return the nucleotide sequences of the sampled records, which are decoded while they are iterated
+	 */
+	public Iterable<String> sequences() {
+		return new Iterable<String>() {
+			public Iterator<String> iterator() {
+				return new Iterator<String>() {
+					private int position = 0;
+					private int record = 0;
+
+					public boolean hasNext() {
+						return record < records;
+					}
+
+					public String next() {
+						if(!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						position = nextLine(position);
+						int end = nextLine(position);
+						String sequence = new String(buffer, position, lineLength(position, end), StandardCharsets.US_ASCII);
+						position = nextLine(nextLine(end));
+						record++;
+						return sequence;
+					}
+				};
+			}
+		};
+	}
+
+	private int nextLine(int position) {
+		while(position < length && buffer[position] != '\n') {
+			position++;
+		}
+		return position + 1;
+	}
+
+	//the length of a line without the line break, which may be a Windows line break
+	private int lineLength(int start, int next) {
+		int end = next - 1;
+		if(end > start && buffer[end - 1] == '\r') {
+			end--;
+		}
+		return end - start;
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import clipping.Read;
+
+/**
+ * Encodes FASTQ records directly into a large byte buffer,
+ * which is only written when it is full or the writer is flushed.
+ * If an asynchronous writer is used, filled buffers are handed over to its thread instead.
+ */
+public class FastqWriter {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private final OutputStream out;
+	private final AsyncWriter asyncWriter;
+	private byte[] buffer;
+	private int position = 0;
+
+	public FastqWriter(OutputStream out) {
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	public FastqWriter(OutputStream out, int bufferSize) {
+		this.out = out;
+		this.asyncWriter = null;
+		this.buffer = new byte[Math.max(1, bufferSize)];
+	}
+
+	/**
+	 * creates a writer which collects all records in memory, see {@link #transferTo(FastqWriter)}
+	 * such a writer is not flushed or closed
+	 */
+	public FastqWriter() {
+		this.out = null;
+		this.asyncWriter = null;
+		this.buffer = new byte[1 << 16];
+	}
+
+	public FastqWriter(AsyncWriter asyncWriter) {
+		this.out = null;
+		this.asyncWriter = asyncWriter;
+		this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+	}
+
+	/**
+	 * writes a read, the prefix is inserted after the first '@' of the name
+	 * @param read
+	 * @param prefix
+	 * @throws IOException
+	 */
+	public void write(Read read, String prefix) throws IOException {
+		String name = read.name;
+		ensureCapacity(name.length() + prefix.length() + read.sequence.length() + read.empty.length() + read.quality.length() + 4);
+
+		int start = position;
+		int at = name.indexOf('@');
+		boolean ascii;
+		if(at < 0) {
+			ascii = append(name, 0, name.length());
+		} else {
+			ascii = append(name, 0, at + 1) && append(prefix, 0, prefix.length()) && append(name, at + 1, name.length());
+		}
+		ascii = ascii && appendLine(read.sequence) && appendLine(read.empty) && appendLine(read.quality);
+
+		if(!ascii) {
+			position = start;
+			writeEncoded(read, prefix);
+			return;
+		}
+		buffer[position++] = '\n';
+	}
+
+	private boolean appendLine(String s) {
+		buffer[position++] = '\n';
+		return append(s, 0, s.length());
+	}
+
+	/**
+	 * copies the characters of a string, the capacity for one byte per character has to be ensured
+	 * @param s
+	 * @param from
+	 * @param to
+	 * @return false if the string contains non ASCII characters
+	 */
+	private boolean append(String s, int from, int to) {
+		for(int i = from; i < to; i++) {
+			char c = s.charAt(i);
+			if(c >= 0x80) {
+				return false;
+			}
+			buffer[position++] = (byte)c;
+		}
+		return true;
+	}
+
+	/**
+	 * records with non ASCII characters are encoded like a Writer with the default charset would do
+	 * @param read
+	 * @param prefix
+	 * @throws IOException
+	 */
+	private void writeEncoded(Read read, String prefix) throws IOException {
+		String record = read.name.replaceFirst("@", "@" + prefix) + "\n" + read.sequence + "\n" + read.empty + "\n" + read.quality + "\n";
+		byte[] encoded = record.getBytes(Charset.defaultCharset());
+		ensureCapacity(encoded.length);
+		System.arraycopy(encoded, 0, buffer, position, encoded.length);
+		position += encoded.length;
+	}
+
+	private void ensureCapacity(int length) throws IOException {
+		if(position + length <= buffer.length) {
+			return;
+		}
+		if(collecting()) {
+			buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, position + length));
+			return;
+		}
+		writeBuffer();
+		if(length > buffer.length) {
+			buffer = new byte[length];
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		if(position > 0) {
+			if(asyncWriter != null) {
+				buffer = asyncWriter.submit(buffer, position);
+			} else {
+				out.write(buffer, 0, position);
+			}
+			position = 0;
+		}
+	}
+
+	private boolean collecting() {
+		return out == null && asyncWriter == null;
+	}
+
+	/**
+	 * writes already encoded records
+	 * @param b
+	 * @param off
+	 * @param len
+	 * @throws IOException
+	 */
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureCapacity(collecting() ? len : Math.min(len, buffer.length));
+		while(len > 0) {
+			int n = Math.min(len, buffer.length - position);
+			System.arraycopy(b, off, buffer, position, n);
+			position += n;
+			off += n;
+			len -= n;
+			if(len > 0) {
+				writeBuffer();
+			}
+		}
+	}
+
+	/**
+	 * writes the records collected in memory to another writer and empties this writer
+	 * @param target
+	 * @throws IOException
+	 */
+	public void transferTo(FastqWriter target) throws IOException {
+		target.write(buffer, 0, position);
+		position = 0;
+	}
+
+	/**
+	 * @return the number of bytes in the buffer
+	 */
+	public int buffered() {
+		return this.position;
+	}
+
+	/**
+	 * writes the buffered records, the asynchronous writer flushes its stream only when it is closed
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		writeBuffer();
+		if(asyncWriter == null) {
+			out.flush();
+		}
+	}
+
+	/**
+	 * writes the buffered records and closes the stream, waiting for the asynchronous writer to finish
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		writeBuffer();
+		if(asyncWriter != null) {
+			asyncWriter.close();
+		} else {
+			out.close();
+		}
+	}
+}
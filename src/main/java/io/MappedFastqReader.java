@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Cuts an uncompressed FASTQ file into large chunks using memory mapping
+ *
+ * Chunks can either be cut by size, then the end of a chunk is moved to the
+ * next record start (a '@' line followed by a '+' line two lines later),
+ * or by a fixed number of records. The latter is used for paired input,
+ * so that the n-th chunk of the forward and of the reverse file contain the same reads.
+ */
+public class MappedFastqReader {
+
+	public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+	public static final int RECORDS_PER_CHUNK = 32768;
+
+	//mappings are limited to 2GB, so the file is mapped in windows
+	private static final long WINDOW_SIZE = 1L << 30;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final long fileSize;
+	private final int chunkSize;
+
+	private MappedByteBuffer window = null;
+	private long windowStart = 0;
+	private long windowEnd = 0;
+
+	private long position = 0;
+	private long chunkIndex = 0;
+
+	public MappedFastqReader(File file) throws IOException {
+		this(file, DEFAULT_CHUNK_SIZE);
+	}
+
+	public MappedFastqReader(File file, int chunkSize) throws IOException {
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "r");
+		this.channel = raf.getChannel();
+		this.fileSize = channel.size();
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * cuts the next chunk of roughly the chunk size, ending at a record boundary
+	 * @return the next chunk or null at the end of the file
+	 * @throws IOException if no record boundary can be found
+	 */
+	public FastqChunk nextChunk() throws IOException {
+		if(position >= fileSize) {
+			return null;
+		}
+
+		long target = position + chunkSize;
+		if(target >= fileSize) {
+			return cut(fileSize, -1);
+		}
+
+		if(target + chunkSize > windowEnd && windowEnd < fileSize) {
+			map(position);
+		}
+
+		return cut(resync(target), -1);
+	}
+
+	/**
+	 * cuts the next chunk containing the given number of records
+	 * the last chunk of the file may contain less records
+	 * @param records
+	 * @return the next chunk or null at the end of the file
+	 * @throws IOException
+	 */
+	public FastqChunk nextChunk(int records) throws IOException {
+		if(position >= fileSize) {
+			return null;
+		}
+
+		if(position >= windowEnd) {
+			map(position);
+		}
+
+		long linesToSkip = 4L * records;
+		long p = position;
+		while(linesToSkip > 0 && p < fileSize) {
+			if(p >= windowEnd) {
+				//the chunk does not fit into the current window, start a new one at the chunk start
+				if(windowStart == position) {
+					throw new IOException("FASTQ records too large for memory mapping in file " + file.getAbsolutePath());
+				}
+				map(position);
+				p = position;
+				linesToSkip = 4L * records;
+				continue;
+			}
+			if(window.get((int)(p - windowStart)) == '\n') {
+				linesToSkip--;
+			}
+			p++;
+		}
+
+		return cut(p, records - (int)(linesToSkip / 4));
+	}
+
+	/**
+	 * finds the first record start at or after the given file offset
+	 * @param from
+	 * @return
+	 * @throws IOException
+	 */
+	private long resync(long from) throws IOException {
+		long lineStart = nextLineStart(from);
+		while(lineStart < windowEnd) {
+			long second = followingLine(lineStart);
+			long third = followingLine(second);
+			if(third >= windowEnd) {
+				break;
+			}
+			if(byteAt(lineStart) == '@' && byteAt(third) == '+') {
+				return lineStart;
+			}
+			lineStart = second;
+		}
+
+		if(windowEnd == fileSize) {
+			return fileSize;
+		}
+		throw new IOException("Cannot find a FASTQ record start after offset " + from + " in file " + file.getAbsolutePath());
+	}
+
+	/**
+	 * @param from
+	 * @return the offset of the first line starting at or after the given offset or the window end
+	 */
+	private long nextLineStart(long from) {
+		if(from > windowStart && byteAt(from - 1) == '\n') {
+			return from;
+		}
+		return followingLine(from);
+	}
+
+	/**
+	 * @param from
+	 * @return the offset of the line after the one containing the given offset or the window end
+	 */
+	private long followingLine(long from) {
+		for(long p = from; p < windowEnd; p++) {
+			if(byteAt(p) == '\n') {
+				return p + 1;
+			}
+		}
+		return windowEnd;
+	}
+
+	private byte byteAt(long offset) {
+		return window.get((int)(offset - windowStart));
+	}
+
+	private FastqChunk cut(long end, int records) throws IOException {
+		if(window == null || end > windowEnd || position < windowStart) {
+			map(position);
+		}
+
+		ByteBuffer data = window.duplicate();
+		data.position((int)(position - windowStart));
+		data.limit((int)(end - windowStart));
+
+		FastqChunk chunk = new FastqChunk(data.slice(), position, chunkIndex++, records);
+		position = end;
+		return chunk;
+	}
+
+	private void map(long start) throws IOException {
+		long length = Math.min(fileSize - start, WINDOW_SIZE);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		windowStart = start;
+		windowEnd = start + length;
+	}
+
+	public long fileSize() {
+		return this.fileSize;
+	}
+
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+		raf.close();
+	}
+}
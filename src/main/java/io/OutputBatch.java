@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+/**
+ * The output records of a batch of reads, collected in memory for each output file
+ * until the batch is committed to the output files
+ */
+public class OutputBatch {
+
+	final FastqWriter output;
+	final FastqWriter forwardOutput;
+	final FastqWriter reverseOutput;
+
+	/**
+	 * @param separateMatePairs true if unmerged mate pairs are written to separate files
+	 */
+	OutputBatch(boolean separateMatePairs) {
+		this.output = new FastqWriter();
+		if(separateMatePairs) {
+			this.forwardOutput = new FastqWriter();
+			this.reverseOutput = new FastqWriter();
+		} else {
+			this.forwardOutput = output;
+			this.reverseOutput = output;
+		}
+	}
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses BGZF files, i.e. gzip files consisting of many small members
+ * which carry their compressed size in a 'BC' extra field (as written by bgzip or samtools).
+ *
+ * Because the member boundaries are known without inflating, the compressed members are
+ * read sequentially and inflated concurrently on a pool of threads, each with its own Inflater.
+ * The decompressed members are returned in file order.
+ *
+ * Ordinary gzip files do not carry the member sizes, use {@link #isBgzf(File)} to decide
+ * whether this stream can be used or a GZIPInputStream is needed.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+	private static final int ID1 = 0x1f;
+	private static final int ID2 = 0x8b;
+	private static final int FEXTRA = 4;
+	//the maximum size of a BGZF block, compressed or not
+	private static final int MAX_BLOCK_SIZE = 1 << 16;
+	//CRC32 and ISIZE after the compressed data
+	private static final int TRAILER_LENGTH = 8;
+
+	private final DataInputStream in;
+	private final ExecutorService inflaters;
+	private final int maxPending;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private boolean endOfInput = false;
+
+	private byte[] current = new byte[0];
+	private int currentPosition = 0;
+
+	private final byte[] header = new byte[12];
+
+	private static final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>() {
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	public ParallelGzipInputStream(InputStream in, int threads) {
+		this.in = new DataInputStream(new BufferedInputStream(in, 1 << 20));
+		this.maxPending = Math.max(4, 4 * threads);
+		this.inflaters = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "bgzf-inflater");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * checks whether the first member of a gzip file is a BGZF block
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isBgzf(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			byte[] header = new byte[12];
+			in.readFully(header);
+			if(!isGzipHeader(header) || (header[3] & FEXTRA) == 0) {
+				return false;
+			}
+			byte[] extra = new byte[unsignedShort(header, 10)];
+			in.readFully(extra);
+			return blockSize(extra) >= 0;
+		} catch(EOFException e) {
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static boolean isGzipHeader(byte[] header) {
+		return (header[0] & 0xff) == ID1 && (header[1] & 0xff) == ID2 && header[2] == 8;
+	}
+
+	private static int unsignedShort(byte[] b, int offset) {
+		return (b[offset] & 0xff) | ((b[offset+1] & 0xff) << 8);
+	}
+
+	private static int signedInt(byte[] b, int offset) {
+		return (b[offset] & 0xff) | ((b[offset+1] & 0xff) << 8) | ((b[offset+2] & 0xff) << 16) | ((b[offset+3] & 0xff) << 24);
+	}
+
+	/**
+	 * @param extra the extra field of a gzip header
+	 * @return BSIZE (total block size - 1) from the 'BC' subfield or -1 if there is none
+	 */
+	private static int blockSize(byte[] extra) {
+		int p = 0;
+		while(p + 4 <= extra.length) {
+			int length = unsignedShort(extra, p + 2);
+			if(extra[p] == 'B' && extra[p+1] == 'C' && length == 2 && p + 6 <= extra.length) {
+				return unsignedShort(extra, p + 4);
+			}
+			p += 4 + length;
+		}
+		return -1;
+	}
+
+	/**
+	 * reads the next compressed member and submits it for inflation
+	 * @return false at the end of the input
+	 * @throws IOException
+	 */
+	private boolean submitNextBlock() throws IOException {
+		int read = 0;
+		while(read < header.length) {
+			int n = in.read(header, read, header.length - read);
+			if(n < 0) {
+				if(read == 0) {
+					return false;
+				}
+				throw new EOFException("Truncated BGZF block header");
+			}
+			read += n;
+		}
+
+		if(!isGzipHeader(header) || (header[3] & FEXTRA) == 0) {
+			throw new IOException("Invalid BGZF block: missing gzip header or extra field");
+		}
+
+		byte[] extra = new byte[unsignedShort(header, 10)];
+		in.readFully(extra);
+		int blockSize = blockSize(extra);
+		if(blockSize < 0) {
+			throw new IOException("Invalid BGZF block: missing BC extra field");
+		}
+		if(blockSize + 1 > MAX_BLOCK_SIZE || blockSize + 1 < header.length + extra.length + TRAILER_LENGTH) {
+			throw new IOException("Invalid BGZF block: block size " + (blockSize + 1) + " does not fit the header and trailer or exceeds " + MAX_BLOCK_SIZE + " bytes");
+		}
+
+		//compressed data followed by CRC32 and ISIZE
+		final byte[] data = new byte[blockSize + 1 - header.length - extra.length];
+		in.readFully(data);
+		int size = signedInt(data, data.length - 4);
+		if(size < 0 || size > MAX_BLOCK_SIZE) {
+			throw new IOException("Invalid BGZF block: uncompressed size " + (size & 0xffffffffL) + " exceeds " + MAX_BLOCK_SIZE + " bytes");
+		}
+
+		pending.add(inflaters.submit(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return inflate(data);
+			}
+		}));
+		return true;
+	}
+
+	private static byte[] inflate(byte[] data) throws IOException {
+		int compressedLength = data.length - 8;
+		int crc = signedInt(data, compressedLength);
+		int size = signedInt(data, compressedLength + 4);
+
+		byte[] result = new byte[size];
+		Inflater inf = inflater.get();
+		inf.reset();
+		inf.setInput(data, 0, compressedLength);
+		try {
+			int n = 0;
+			while(n < size && !inf.finished()) {
+				int inflated = inf.inflate(result, n, size - n);
+				if(inflated == 0 && (inf.needsInput() || inf.needsDictionary())) {
+					break;
+				}
+				n += inflated;
+			}
+			if(n != size) {
+				throw new IOException("Invalid BGZF block: expected " + size + " bytes but inflated " + n);
+			}
+		} catch(DataFormatException e) {
+			throw new IOException("Invalid BGZF block: " + e.getMessage());
+		}
+
+		CRC32 checksum = new CRC32();
+		checksum.update(result, 0, size);
+		if((int)checksum.getValue() != crc) {
+			throw new IOException("Invalid BGZF block: CRC32 mismatch");
+		}
+		return result;
+	}
+
+	/**
+	 * makes the next decompressed block the current one
+	 * @return false at the end of the input
+	 * @throws IOException
+	 */
+	private boolean nextBlock() throws IOException {
+		while(true) {
+			while(!endOfInput && pending.size() < maxPending) {
+				if(!submitNextBlock()) {
+					endOfInput = true;
+				}
+			}
+
+			if(pending.isEmpty()) {
+				return false;
+			}
+
+			try {
+				current = pending.poll().get();
+			} catch(InterruptedException e) {
+				throw new IOException(e);
+			} catch(ExecutionException e) {
+				if(e.getCause() instanceof IOException) {
+					throw (IOException)e.getCause();
+				}
+				throw new IOException(e.getCause());
+			}
+			currentPosition = 0;
+
+			//skip empty blocks like the BGZF end of file marker
+			if(current.length > 0) {
+				return true;
+			}
+		}
+	}
+
+	public int read() throws IOException {
+		if(currentPosition >= current.length && !nextBlock()) {
+			return -1;
+		}
+		return current[currentPosition++] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) {
+			return 0;
+		}
+		if(currentPosition >= current.length && !nextBlock()) {
+			return -1;
+		}
+
+		int copied = 0;
+		while(copied < len) {
+			int n = Math.min(len - copied, current.length - currentPosition);
+			System.arraycopy(current, currentPosition, b, off + copied, n);
+			currentPosition += n;
+			copied += n;
+
+			//do not block for further blocks if something could be returned already
+			if(currentPosition >= current.length && (pending.isEmpty() || !pending.peek().isDone() || !nextBlock())) {
+				break;
+			}
+		}
+		return copied;
+	}
+
+	public void close() throws IOException {
+		inflaters.shutdownNow();
+		in.close();
+	}
+}
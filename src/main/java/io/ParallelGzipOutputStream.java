@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the output in independent blocks on a pool of threads.
+ *
+ * Every block is written as a separate gzip member, in the order the data was written,
+ * so the result is a valid multi-member gzip file. In BGZF mode the blocks are small enough
+ * to carry their size in a 'BC' extra field and the file ends with the BGZF end of file marker.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	public static final int GZIP_BLOCK_SIZE = 1 << 18;
+	//uncompressed BGZF blocks must stay below 64KB even if they are not compressible
+	public static final int BGZF_BLOCK_SIZE = 0xff00;
+
+	private static final byte[] GZIP_HEADER = new byte[] {0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, (byte)0xff};
+	private static final byte[] BGZF_HEADER = new byte[] {0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff, 6, 0, 'B', 'C', 2, 0, 0, 0};
+
+	private final OutputStream out;
+	private final boolean bgzf;
+	private final int level;
+	private final int blockSize;
+	private final int maxPending;
+	private final ExecutorService deflaters;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	private byte[] block;
+	private int blockLength = 0;
+	private boolean membersWritten = false;
+	private boolean closed = false;
+
+	private final ThreadLocal<Deflater> deflater = new ThreadLocal<Deflater>() {
+		protected Deflater initialValue() {
+			return new Deflater(level, true);
+		}
+	};
+
+	/**
+	 * @param out
+	 * @param threads the number of threads used for compression
+	 * @param level the compression level (0-9 or -1 for the default level)
+	 * @param bgzf write BGZF blocks instead of larger gzip members
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int threads, int level, boolean bgzf) {
+		this.out = out;
+		this.bgzf = bgzf;
+		this.level = level;
+		this.blockSize = bgzf ? BGZF_BLOCK_SIZE : GZIP_BLOCK_SIZE;
+		this.block = new byte[blockSize];
+		this.maxPending = 2 * Math.max(1, threads);
+		this.deflaters = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "gzip-deflater");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public void write(int b) throws IOException {
+		block[blockLength++] = (byte)b;
+		if(blockLength == blockSize) {
+			submitBlock();
+		}
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			int n = Math.min(len, blockSize - blockLength);
+			System.arraycopy(b, off, block, blockLength, n);
+			blockLength += n;
+			off += n;
+			len -= n;
+			if(blockLength == blockSize) {
+				submitBlock();
+			}
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		final byte[] data = block;
+		final int length = blockLength;
+		pending.add(deflaters.submit(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return compress(data, length);
+			}
+		}));
+		block = new byte[blockSize];
+		blockLength = 0;
+
+		//limit the number of blocks in memory
+		while(pending.size() >= maxPending) {
+			writeMember(pending.poll());
+		}
+	}
+
+	/**
+	 * compresses a block into a complete gzip member
+	 * @param data
+	 * @param length
+	 * @return
+	 */
+	private byte[] compress(byte[] data, int length) {
+		byte[] header = bgzf ? BGZF_HEADER : GZIP_HEADER;
+		byte[] member = new byte[header.length + length + (length >>> 7) + 64];
+		System.arraycopy(header, 0, member, 0, header.length);
+
+		Deflater d = deflater.get();
+		d.reset();
+		d.setInput(data, 0, length);
+		d.finish();
+		int position = header.length;
+		while(!d.finished()) {
+			position += d.deflate(member, position, member.length - position);
+			if(position == member.length) {
+				member = Arrays.copyOf(member, member.length * 2);
+			}
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		if(member.length < position + 8) {
+			member = Arrays.copyOf(member, position + 8);
+		}
+		position = writeInt(member, position, (int)crc.getValue());
+		position = writeInt(member, position, length);
+
+		if(bgzf) {
+			//BSIZE is the total block size - 1
+			member[16] = (byte)(position - 1);
+			member[17] = (byte)((position - 1) >>> 8);
+		}
+		return Arrays.copyOf(member, position);
+	}
+
+	private static int writeInt(byte[] b, int offset, int value) {
+		b[offset] = (byte)value;
+		b[offset+1] = (byte)(value >>> 8);
+		b[offset+2] = (byte)(value >>> 16);
+		b[offset+3] = (byte)(value >>> 24);
+		return offset + 4;
+	}
+
+	private void writeMember(Future<byte[]> member) throws IOException {
+		try {
+			out.write(member.get());
+			membersWritten = true;
+		} catch(InterruptedException e) {
+			throw new IOException(e);
+		} catch(ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * writes all blocks which are compressed already
+	 * the current block is not cut, so flushing does not create small gzip members
+	 */
+	public void flush() throws IOException {
+		while(!pending.isEmpty() && pending.peek().isDone()) {
+			writeMember(pending.poll());
+		}
+		out.flush();
+	}
+
+	/**
+	 * compresses the remaining data and waits until all blocks are written
+	 */
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			if(blockLength > 0) {
+				submitBlock();
+			}
+			while(!pending.isEmpty()) {
+				writeMember(pending.poll());
+			}
+
+			//the end of file marker of BGZF is an empty block, plain gzip files need at least one member
+			if(bgzf || !membersWritten) {
+				out.write(compress(new byte[0], 0));
+			}
+		} finally {
+			deflaters.shutdownNow();
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads (and thereby decompresses) an input stream on a separate thread
+ * into a bounded ring of large buffers, so that decompression and parsing/clipping
+ * of the same file can run on different cores.
+ *
+ * The reading thread is started with the first read, so files which are
+ * processed one after the other do not decompress at the same time.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+	private static class Buffer {
+		private final byte[] data;
+		private int length = 0;
+		//only set for the end of the input, if reading failed
+		private Throwable error = null;
+
+		private Buffer(int size) {
+			this.data = new byte[size];
+		}
+	}
+
+	private final InputStream in;
+	private final int depth;
+	private final int bufferSize;
+
+	private final BlockingQueue<Buffer> free;
+	private final BlockingQueue<Buffer> filled;
+	private final Buffer endOfInput = new Buffer(0);
+
+	private Thread reader = null;
+	private volatile boolean closed = false;
+
+	private Buffer current = null;
+	private int position = 0;
+
+	//statistics about the ring
+	private long buffersTaken = 0;
+	private long occupancySum = 0;
+	private long parserWaits = 0;
+	private volatile long readerWaits = 0;
+
+	/**
+	 * @param in the stream to read ahead
+	 * @param depth the number of buffers which can be filled in advance
+	 * @param bufferSize the size of a single buffer in bytes
+	 */
+	public ReadAheadInputStream(InputStream in, int depth, int bufferSize) {
+		this.in = in;
+		this.depth = Math.max(1, depth);
+		this.bufferSize = Math.max(1, bufferSize);
+
+		//one more buffer than the depth is needed, as one buffer is consumed by the parser
+		this.free = new ArrayBlockingQueue<Buffer>(this.depth + 1);
+		this.filled = new ArrayBlockingQueue<Buffer>(this.depth + 1);
+	}
+
+	private void startReader() {
+		for(int i = 0; i <= depth; i++) {
+			free.add(new Buffer(bufferSize));
+		}
+
+		reader = new Thread(new Runnable() {
+			public void run() {
+				readAhead();
+			}
+		}, "read-ahead");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void readAhead() {
+		Buffer buffer = null;
+		try {
+			boolean endReached = false;
+			while(!endReached && !closed) {
+				buffer = free.poll();
+				if(buffer == null) {
+					readerWaits++;
+					buffer = free.take();
+				}
+
+				buffer.length = 0;
+				while(buffer.length < buffer.data.length) {
+					int n = in.read(buffer.data, buffer.length, buffer.data.length - buffer.length);
+					if(n < 0) {
+						endReached = true;
+						break;
+					}
+					buffer.length += n;
+				}
+
+				if(buffer.length > 0) {
+					filled.put(buffer);
+				}
+				buffer = null;
+			}
+		} catch(InterruptedException e) {
+			//closed while waiting
+			return;
+		} catch(Throwable t) {
+			//handed over with the end of the input and rethrown by the parser
+			endOfInput.error = t;
+		}
+
+		try {
+			//the bytes read before a failure are passed on first
+			if(buffer != null && buffer.length > 0) {
+				filled.put(buffer);
+			}
+			filled.put(endOfInput);
+		} catch(InterruptedException e) {
+			//closed while waiting
+		}
+	}
+
+	/**
+	 * hands the current buffer back to the reading thread and takes the next filled one
+	 * @return false at the end of the input
+	 * @throws IOException
+	 */
+	private boolean nextBuffer() throws IOException {
+		if(current == endOfInput) {
+			return endOfInput();
+		}
+		if(current != null) {
+			free.add(current);
+		} else if(reader == null) {
+			startReader();
+		}
+
+		try {
+			current = filled.poll();
+			if(current == null) {
+				parserWaits++;
+				current = filled.take();
+			}
+		} catch(InterruptedException e) {
+			throw new IOException(e);
+		}
+		position = 0;
+		buffersTaken++;
+		occupancySum += filled.size();
+
+		if(current == endOfInput) {
+			return endOfInput();
+		}
+		return true;
+	}
+
+	/**
+	 * @return false
+	 * @throws IOException if reading failed, other failures of the reading thread are rethrown as they are
+	 */
+	private boolean endOfInput() throws IOException {
+		Throwable t = endOfInput.error;
+		if(t instanceof IOException) {
+			throw (IOException)t;
+		}
+		if(t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		}
+		if(t instanceof Error) {
+			throw (Error)t;
+		}
+		if(t != null) {
+			throw new IOException(t);
+		}
+		return false;
+	}
+
+	public int read() throws IOException {
+		if((current == null || position >= current.length) && !nextBuffer()) {
+			return -1;
+		}
+		return current.data[position++] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) {
+			return 0;
+		}
+		if((current == null || position >= current.length) && !nextBuffer()) {
+			return -1;
+		}
+
+		int n = Math.min(len, current.length - position);
+		System.arraycopy(current.data, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	public int getDepth() {
+		return this.depth;
+	}
+
+	public int getBufferSize() {
+		return this.bufferSize;
+	}
+
+	/**
+	 * @return the average number of filled buffers left in the ring whenever the parser took one
+	 */
+	public double getAverageOccupancy() {
+		return buffersTaken == 0 ? 0 : (double)occupancySum / (double)buffersTaken;
+	}
+
+	/**
+	 * @return how often the parser found the ring empty and had to wait for decompression
+	 */
+	public long getParserWaits() {
+		return this.parserWaits;
+	}
+
+	/**
+	 * @return how often the ring was full and decompression had to wait for the parser
+	 */
+	public long getReaderWaits() {
+		return this.readerWaits;
+	}
+
+	public void close() throws IOException {
+		closed = true;
+		if(reader != null) {
+			reader.interrupt();
+			try {
+				reader.join();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		in.close();
+	}
+}
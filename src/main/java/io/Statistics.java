@@ -22,63 +22,67 @@ import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 
+/**
+ * The counts of a merge run. Every worker owns its own object, so the counters are plain fields
+ * which are never written by more than one thread. The objects of the workers are merged when they are finished.
+ */
 public class Statistics {
 
-	private static String identifier = "";
-  	private static int numReadsFailClipping = 0;
+	private String identifier = "";
+  	private long numReadsFailClipping = 0;
 
-	private static int numMergedReads = 0;
-	private static int numFReads = 0;
-	private static int numRReads = 0;
+	private long numMergedReads = 0;
+	private long numFReads = 0;
+	private long numRReads = 0;
 
-	private static int numNotMergedFReads = 0;
-	private static int numNotMergedRReads = 0;
+	private long numNotMergedFReads = 0;
+	private long numNotMergedRReads = 0;
 
-	private static int numReadPairsTooSmallOverlap = 0;
+	private long numReadPairsTooSmallOverlap = 0;
 
-	private static int numReadsNotMergedTooShortF = 0;
-	private static int numReadsNotMergedTooShortR = 0;
+	private long numReadsNotMergedTooShortF = 0;
+	private long numReadsNotMergedTooShortR = 0;
 
-	private static int numReadsNoPartnerTooShortF = 0;
-	private static int numReadsNoPartnerTooShortR = 0;
+	private long numReadsNoPartnerTooShortF = 0;
+	private long numReadsNoPartnerTooShortR = 0;
 
-	private static int numReadsTooShortF = 0;
-	private static int numReadsTooShortR = 0;
-	private static int numReadsMergedTooShort = 0;
-  	private static int numReadsMateTooShort = 0;
+	private long numReadsTooShortF = 0;
+	private long numReadsTooShortR = 0;
+	private long numReadsMergedTooShort = 0;
+  	private long numReadsMateTooShort = 0;
 
-	private static int numDiscardedMergedReads = 0;
+	private long numDiscardedMergedReads = 0;
 
-	private static int sumOverlaps = 0;
+	private long sumOverlaps = 0;
 
-	public static void printStats(BufferedWriter logWriter, File name) throws IOException {
+	public void printStats(BufferedWriter logWriter, File name) throws IOException {
 	logWriter.write("SampleID: " +getSampleName(name));
 	logWriter.newLine();
     logWriter.write("[Clipping both]");
     logWriter.newLine();
-    logWriter.write("- Number of reads failed clipping: "+Integer.toString(numReadsFailClipping));
+    logWriter.write("- Number of reads failed clipping: "+Long.toString(numReadsFailClipping));
     logWriter.newLine();
     logWriter.newLine();
 		logWriter.write("[Merging]");
 		logWriter.newLine();
 
-		logWriter.write("- Number of usable reads in the output file(s): " + Integer.toString(numFReads + numReadPairsTooSmallOverlap + numNotMergedFReads + numMergedReads + numRReads + numReadPairsTooSmallOverlap + numNotMergedRReads));
+		logWriter.write("- Number of usable reads in the output file(s): " + Long.toString(numFReads + numReadPairsTooSmallOverlap + numNotMergedFReads + numMergedReads + numRReads + numReadPairsTooSmallOverlap + numNotMergedRReads));
 		logWriter.newLine();
-		logWriter.write("- Number of usable forward reads with no pairing reverse read: " + Integer.toString(numFReads));
+		logWriter.write("- Number of usable forward reads with no pairing reverse read: " + Long.toString(numFReads));
 		logWriter.newLine();
-		logWriter.write("- Number of usable reverse reads with no pairing forward read: " + Integer.toString(numRReads));
+		logWriter.write("- Number of usable reverse reads with no pairing forward read: " + Long.toString(numRReads));
 		logWriter.newLine();
-    logWriter.write("- Number of usable forward reads with too short reverse read: " + Integer.toString(numNotMergedFReads));
+    logWriter.write("- Number of usable forward reads with too short reverse read: " + Long.toString(numNotMergedFReads));
     logWriter.newLine();
-    logWriter.write("- Number of usable reverse reads with too short forward read: " + Integer.toString(numNotMergedRReads));
+    logWriter.write("- Number of usable reverse reads with too short forward read: " + Long.toString(numNotMergedRReads));
     logWriter.newLine();
-		logWriter.write("- Number of usable not merged forward reads: " + Integer.toString(numFReads + numReadPairsTooSmallOverlap + numNotMergedFReads));
+		logWriter.write("- Number of usable not merged forward reads: " + Long.toString(numFReads + numReadPairsTooSmallOverlap + numNotMergedFReads));
 		logWriter.newLine();
-		logWriter.write("- Number of usable not merged reverse reads: " + Integer.toString(numRReads + numReadPairsTooSmallOverlap + numNotMergedRReads));
+		logWriter.write("- Number of usable not merged reverse reads: " + Long.toString(numRReads + numReadPairsTooSmallOverlap + numNotMergedRReads));
 		logWriter.newLine();
-		logWriter.write("- Number of merged reads discarded due to bad quality: " + Integer.toString(numDiscardedMergedReads));
+		logWriter.write("- Number of merged reads discarded due to bad quality: " + Long.toString(numDiscardedMergedReads));
 		logWriter.newLine();
-		logWriter.write("- Number of usable merged reads: " + Integer.toString(numMergedReads));
+		logWriter.write("- Number of usable merged reads: " + Long.toString(numMergedReads));
     logWriter.newLine();
     double percMergedOfTotalInputPairs = Math.round(((double)numMergedReads/getNumReads()) * 10000.) / 100.;
     logWriter.write("- Percentage of total input pairs resulting in usable merged reads: " + Double.toString(percMergedOfTotalInputPairs) + " %");
@@ -91,31 +95,31 @@ public class Statistics {
 
 		logWriter.newLine();
 
-		logWriter.write("- Number of read pairs not merged (no overlap): " + Integer.toString(numReadPairsTooSmallOverlap));
+		logWriter.write("- Number of read pairs not merged (no overlap): " + Long.toString(numReadPairsTooSmallOverlap));
 		logWriter.newLine();
 
 		logWriter.newLine();
 
-		int removedSingle = numReadsNotMergedTooShortF + numReadsNotMergedTooShortR + numReadsNoPartnerTooShortF + numReadsNoPartnerTooShortR + numReadsMergedTooShort;
-		logWriter.write("- Number of single reads removed: " + Integer.toString(removedSingle));
+		long removedSingle = numReadsNotMergedTooShortF + numReadsNotMergedTooShortR + numReadsNoPartnerTooShortF + numReadsNoPartnerTooShortR + numReadsMergedTooShort;
+		logWriter.write("- Number of single reads removed: " + Long.toString(removedSingle));
 		logWriter.newLine();
-		logWriter.write("     ... not merged and too short forward read: " + Integer.toString(numReadsNotMergedTooShortF));
+		logWriter.write("     ... not merged and too short forward read: " + Long.toString(numReadsNotMergedTooShortF));
 		logWriter.newLine();
-		logWriter.write("     ... not merged and too short reverse read: " + Integer.toString(numReadsNotMergedTooShortR));
+		logWriter.write("     ... not merged and too short reverse read: " + Long.toString(numReadsNotMergedTooShortR));
 		logWriter.newLine();
-		logWriter.write("     ... too short forward read with no pairing reverse read: " + Integer.toString(numReadsNoPartnerTooShortF));
+		logWriter.write("     ... too short forward read with no pairing reverse read: " + Long.toString(numReadsNoPartnerTooShortF));
 		logWriter.newLine();
-		logWriter.write("     ... too short reverse read with no pairing forward read: " + Integer.toString(numReadsNoPartnerTooShortR));
+		logWriter.write("     ... too short reverse read with no pairing forward read: " + Long.toString(numReadsNoPartnerTooShortR));
 		logWriter.newLine();
-		logWriter.write("     ... too short merged read: " + Integer.toString(numReadsMergedTooShort));
+		logWriter.write("     ... too short merged read: " + Long.toString(numReadsMergedTooShort));
 		logWriter.newLine();
 
     logWriter.newLine();
 
-    int numPairsUnmerged = getNumReads() - numMergedReads;
-    int numPairsMateAdapterOnly = numFReads + numRReads;
-    int numPairsMateTooShort = numNotMergedFReads + numNotMergedRReads + numReadsMateTooShort;
-    int numPairsNoPartnerTooShort = numReadsNoPartnerTooShortF + numReadsNoPartnerTooShortR;
+    long numPairsUnmerged = getNumReads() - numMergedReads;
+    long numPairsMateAdapterOnly = numFReads + numRReads;
+    long numPairsMateTooShort = numNotMergedFReads + numNotMergedRReads + numReadsMateTooShort;
+    long numPairsNoPartnerTooShort = numReadsNoPartnerTooShortF + numReadsNoPartnerTooShortR;
     double percUnmergedFailedClipping = Math.round(((double)numReadsFailClipping/numPairsUnmerged) * 10000.) / 100.;
     double percUnmergedFailedQuality = Math.round(((double)numDiscardedMergedReads/numPairsUnmerged) * 10000.) / 100.;
     double percUnmergedMateAdapterOnly = Math.round(((double)numPairsMateAdapterOnly/numPairsUnmerged) * 10000.) / 100.;
@@ -124,7 +128,7 @@ public class Statistics {
     double percMergedTooShort = Math.round(((double)numReadsMergedTooShort/numPairsUnmerged) * 10000.) / 100.;
     double percUnmergedNoPartnerTooShort = Math.round(((double)numPairsNoPartnerTooShort/numPairsUnmerged) * 10000.) / 100.;
 
-    int totalUnmerged = numReadsMergedTooShort + numPairsMateAdapterOnly + numPairsMateTooShort + numReadsFailClipping + numDiscardedMergedReads + numReadPairsTooSmallOverlap + numReadsNoPartnerTooShortF + numReadsNoPartnerTooShortR;
+    long totalUnmerged = numReadsMergedTooShort + numPairsMateAdapterOnly + numPairsMateTooShort + numReadsFailClipping + numDiscardedMergedReads + numReadPairsTooSmallOverlap + numReadsNoPartnerTooShortF + numReadsNoPartnerTooShortR;
     //logWriter.write("numPairsUnmerged: "+numPairsUnmerged);
     //logWriter.newLine();
     //logWriter.write("totalUnmerged: "+totalUnmerged);
@@ -132,7 +136,7 @@ public class Statistics {
 
     logWriter.write("[Unmerged breakdown]");
     logWriter.newLine();
-    logWriter.write("- Number of pairs unmerged: "+Integer.toString(totalUnmerged));
+    logWriter.write("- Number of pairs unmerged: "+Long.toString(totalUnmerged));
     logWriter.newLine();
     logWriter.write("- Percentage of unmerged pairs failed clipping: " + Double.toString(percUnmergedFailedClipping) + " %");
     logWriter.newLine();
@@ -151,86 +155,142 @@ public class Statistics {
     logWriter.newLine();
 	}
 
-  public static void increaseNumReadsFailClipping() {
+  public void increaseNumReadsFailClipping() {
     numReadsFailClipping++;
   }
 
-	public static void increaseForwardReads() {
+	public void increaseForwardReads() {
 		numFReads++;
 	}
 
-	public static void increaseReverseReads() {
+	public void increaseReverseReads() {
 		numRReads++;
 	}
 
-	public static void increaseMergedReads() {
+	public void increaseMergedReads() {
 		numMergedReads++;
 	}
 
-	public static void increaseForwardTooShort() {
+	public void increaseForwardTooShort() {
 		numReadsTooShortF++;
 	}
 
-	public static void increaseReverseTooShort() {
+	public void increaseReverseTooShort() {
 		numReadsTooShortR++;
 	}
 
-	public static void increaseMergedTooShort() {
+	public void increaseMergedTooShort() {
 		numReadsMergedTooShort++;
 	}
 
-  public static void increaseMateTooShort() {
+  public void increaseMateTooShort() {
     numReadsMateTooShort++;
   }
 
-	public static int getNumReads() {
+	public long getNumReads() {
 		return numReadsFailClipping + numFReads + numReadsNoPartnerTooShortF + numRReads + numReadsNoPartnerTooShortR + numMergedReads + numReadsMergedTooShort + numNotMergedFReads + numNotMergedRReads + numReadPairsTooSmallOverlap + numReadsMateTooShort + numDiscardedMergedReads;
 	}
 
-  public static int getNumEnds() {
+  public long getNumEnds() {
     return numMergedReads + numFReads + numReadPairsTooSmallOverlap + numNotMergedFReads + numRReads + numReadPairsTooSmallOverlap + numNotMergedRReads;
   }
 
-	public static void increaseNumNotMergedForward() {
+	public void increaseNumNotMergedForward() {
 		numNotMergedFReads++;
 	}
 
-	public static void increaseNumNotMergedReverse() {
+	public void increaseNumNotMergedReverse() {
 		numNotMergedRReads++;
 	}
 
-	public static void increaseNotMergedForwardTooShort() {
+	public void increaseNotMergedForwardTooShort() {
 		numReadsNotMergedTooShortF++;
 	}
 
-	public static void increaseNotMergedReverseTooShort() {
+	public void increaseNotMergedReverseTooShort() {
 		numReadsNotMergedTooShortR++;
 	}
 
-	public static void increaseNoPartnerTooShortF() {
+	public void increaseNoPartnerTooShortF() {
 		numReadsNoPartnerTooShortF++;
 	}
 
-	public static void increaseNoPartnerTooShortR() {
+	public void increaseNoPartnerTooShortR() {
 		numReadsNoPartnerTooShortR++;
 	}
 
-	public static void increaseReadPairsNotMerged() {
+	public void increaseReadPairsNotMerged() {
 		numReadPairsTooSmallOverlap++;
 	}
 
-	public static void increaseDiscardedMergedReads() {
+	public void increaseDiscardedMergedReads() {
 		numDiscardedMergedReads++;
 	}
 
-	public static void increaseMergingOverlap(int overlap) {
+	public void increaseMergingOverlap(int overlap) {
 		sumOverlaps+=overlap;
 	}
 
-	public static double getAverageOverlap() {
+	public double getAverageOverlap() {
 		return Math.round((((double)sumOverlaps / (double)numMergedReads))*1000.)/1000.;
 	}
 
+	/**
+	 * adds the counts of another statistics object, e.g. of a finished worker thread
+	 * @param other
+	 */
+	public void merge(Statistics other) {
+		this.numReadsFailClipping += other.numReadsFailClipping;
+		this.numMergedReads += other.numMergedReads;
+		this.numFReads += other.numFReads;
+		this.numRReads += other.numRReads;
+		this.numNotMergedFReads += other.numNotMergedFReads;
+		this.numNotMergedRReads += other.numNotMergedRReads;
+		this.numReadPairsTooSmallOverlap += other.numReadPairsTooSmallOverlap;
+		this.numReadsNotMergedTooShortF += other.numReadsNotMergedTooShortF;
+		this.numReadsNotMergedTooShortR += other.numReadsNotMergedTooShortR;
+		this.numReadsNoPartnerTooShortF += other.numReadsNoPartnerTooShortF;
+		this.numReadsNoPartnerTooShortR += other.numReadsNoPartnerTooShortR;
+		this.numReadsTooShortF += other.numReadsTooShortF;
+		this.numReadsTooShortR += other.numReadsTooShortR;
+		this.numReadsMergedTooShort += other.numReadsMergedTooShort;
+		this.numReadsMateTooShort += other.numReadsMateTooShort;
+		this.numDiscardedMergedReads += other.numDiscardedMergedReads;
+		this.sumOverlaps += other.sumOverlaps;
+	}
+
+	/**
+	 * sets all counters to 0, e.g. before the next sample is processed
+	 */
+	public void reset() {
+		this.numReadsFailClipping = 0;
+		this.numMergedReads = 0;
+		this.numFReads = 0;
+		this.numRReads = 0;
+		this.numNotMergedFReads = 0;
+		this.numNotMergedRReads = 0;
+		this.numReadPairsTooSmallOverlap = 0;
+		this.numReadsNotMergedTooShortF = 0;
+		this.numReadsNotMergedTooShortR = 0;
+		this.numReadsNoPartnerTooShortF = 0;
+		this.numReadsNoPartnerTooShortR = 0;
+		this.numReadsTooShortF = 0;
+		this.numReadsTooShortR = 0;
+		this.numReadsMergedTooShort = 0;
+		this.numReadsMateTooShort = 0;
+		this.numDiscardedMergedReads = 0;
+		this.sumOverlaps = 0;
+	}
+
+	/**
+	 * @return a copy of the current counts
+	 */
+	public Statistics snapshot() {
+		Statistics copy = new Statistics();
+		copy.merge(this);
+		return copy;
+	}
+
 	private static String getSampleName(File nam){
 		Path p = nam.toPath();
 		String out = p.getFileName().toFile().getName();
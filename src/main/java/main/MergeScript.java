@@ -24,6 +24,8 @@ import java.io.PrintStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
@@ -33,10 +35,14 @@ import org.kohsuke.args4j.spi.DoubleOptionHandler;
 import org.kohsuke.args4j.spi.IntOptionHandler;
 import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 
+import clipping.ClippingEngine;
+import clipping.ScoreOnlyAlignment;
 import setting.MergeSettings;
 import threads.ForwardClipperThread;
 import threads.MergeThread;
+import threads.ReadBatch;
 import threads.ReverseClipperThread;
+import threads.WaitStrategy;
 
 /**
  * Clip & Merge script
@@ -73,10 +79,10 @@ public class MergeScript {
 	@Option(name="-in2", handler=StringArrayOptionHandler.class, required=false, usage="Reverse reads input file(s) in fastq(.gz) file format.")
 	private List<String> inReverse;
 	
-	@Option(name="-f", required=false, usage="Forward reads adapter sequence.", metaVar="FORWARD_ADAPTER_STRING")
+	@Option(name="-f", required=false, usage="Forward reads adapter sequence, a comma separated list of adapter sequences or a FASTA file of adapters. Reads are clipped at the first adapter found.", metaVar="FORWARD_ADAPTER_STRING")
 	private String forwardAdapter = "AGATCGGAAGAGCACACGTCTGAACTCCAGTCAC";
 	
-	@Option(name="-r", required=false, usage="Reverse reads adapter sequence.", metaVar="REVERSE_ADAPTER_STRING")
+	@Option(name="-r", required=false, usage="Reverse reads adapter sequence, a comma separated list of adapter sequences or a FASTA file of adapters. Reads are clipped at the first adapter found.", metaVar="REVERSE_ADAPTER_STRING")
 	private String reverseAdapter = "AGATCGGAAGAGCGTCGTGTAGGGAAAGAGTGTA";
 	
 	@Option(name="-h", required=false, usage="Display this help page and exit.", handler=BooleanOptionHandler.class)
@@ -85,10 +91,43 @@ public class MergeScript {
 	@Option(name="-o", required=false, metaVar="OUTPUT_FILE_STRING", usage="Output file. If no file is provided, output will be written to System.out. If file ends with \'.gz', output will be gzipped.")
 	private String outputFile = null;
 	
-	@Option(name="-maxParallelReads", required=false, metaVar="NUM_READS_INTEGER", usage="Maximal number of reads, that can be processed in parallel. This number largely depends on the processing system settings! Only change it if you know what you are doing!")
+	@Option(name="-maxParallelReads", required=false, metaVar="NUM_READS_INTEGER", usage="Maximal number of reads per input strand waiting to be merged. The reads are handed over in batches of " + ReadBatch.BATCH_SIZE + " reads, so this number is rounded up to whole batches (at least 2). This number largely depends on the processing system settings! Only change it if you know what you are doing!")
 	private int maxParallelReads = 1000;
 	
-	@Option(name="-timeEstimation", required=false, usage="Perform remaining time estimation. Note: this can take long for large gzipped input files.", handler=BooleanOptionHandler.class)
+	@Option(name="-mmap", required=false, usage="Read uncompressed input files via memory mapping and clip chunks of them in parallel. Gzipped input files are read as usual.", handler=BooleanOptionHandler.class)
+	private boolean memoryMappedInput = false;
+	
+	@Option(name="-threads", metaVar="INTEGER", required=false, usage="Number of worker threads used to clip the reads, the input order of the reads is kept. This is also the number of threads used to decompress each BGZF compressed input file, other gzipped files (also plain multi-member gzip) are decompressed serially.", handler=IntOptionHandler.class)
+	private int threads = 1;
+	
+	@Option(name="-readAheadBuffers", metaVar="INTEGER", required=false, usage="Number of buffers a gzipped input file is decompressed ahead of clipping on a separate thread. Use 0 to decompress on the clipping thread.", handler=IntOptionHandler.class)
+	private int readAheadBuffers = 4;
+	
+	@Option(name="-readAheadBufferSize", metaVar="KILOBYTES", required=false, usage="Size of a single read-ahead buffer in kilobytes (see -readAheadBuffers).", handler=IntOptionHandler.class)
+	private int readAheadBufferSize = 1024;
+	
+	@Option(name="-mergeThreads", metaVar="INTEGER", required=false, usage="Number of worker threads used to merge read pairs.", handler=IntOptionHandler.class)
+	private int mergeThreads = 1;
+	
+	@Option(name="-unordered", required=false, usage="Write the output of the merge worker threads in the order it is finished instead of the input order (see -mergeThreads).", handler=BooleanOptionHandler.class)
+	private boolean unorderedOutput = false;
+	
+	@Option(name="-waitStrategy", metaVar="STRATEGY", required=false, usage="How the pipeline threads wait for each other: 'spin' (busy waiting, lowest latency), 'yield' or 'park' (sleeps for short periods, recommended if there are fewer cores than threads). Default: park")
+	private String waitStrategy = "park";
+	
+	@Option(name="-pairMode", required=false, usage="Clip and merge both reads of a pair in one task on the worker threads (see -threads) instead of clipping the forward and reverse reads separately. Only used for paired input, which is then read without memory mapping.", handler=BooleanOptionHandler.class)
+	private boolean pairMode = false;
+	
+	@Option(name="-outputThreads", metaVar="INTEGER", required=false, usage="Number of threads used to compress each gzipped output file.", handler=IntOptionHandler.class)
+	private int outputThreads = 1;
+	
+	@Option(name="-compressionLevel", metaVar="INTEGER", required=false, usage="Compression level (1-9) of gzipped output files, 0 stores the data uncompressed. Default: 6", handler=IntOptionHandler.class)
+	private int compressionLevel = 6;
+	
+	@Option(name="-bgzf", required=false, usage="Write gzipped output files in the BGZF format (blocked gzip as written by bgzip).", handler=BooleanOptionHandler.class)
+	private boolean bgzfOutput = false;
+	
+	@Option(name="-timeEstimation", required=false, usage="Perform remaining time estimation based on the bytes read from the input files.", handler=BooleanOptionHandler.class)
 	private boolean timeEstimation = false;
 	
 	@Option(name="-verbose", required=false, usage="Print additional processing information", handler=BooleanOptionHandler.class)
@@ -103,6 +142,24 @@ public class MergeScript {
 	@Option(name="-m", metaVar="INTEGER", required=false, usage="Require a minimum adapter alignment length. If less nucleotides align with the adapter, the sequences are not clipped.", handler=IntOptionHandler.class)
 	private int minAdapterAlignmentLength = 8;
 	
+	@Option(name="-clippingEngine", metaVar="ENGINE", required=false, usage="Algorithm used to find the adapters: 'alignment' (half local alignment) or 'bitparallel' (the same alignment, but only of the read part where a bit-parallel approximate search locates the adapter, faster for reads with long adapters). Default: alignment")
+	private String clippingEngine = "alignment";
+	
+	@Option(name="-simd", required=false, usage="Use SIMD instructions for the adapter alignment. Requires Java 16 or newer started with '--add-modules jdk.incubator.vector', otherwise the scalar alignment is used.", handler=BooleanOptionHandler.class)
+	private boolean vectorizedAlignment = false;
+	
+	@Option(name="-prefilter", required=false, usage="Skip the adapter alignment of reads which share no 2-mer with the adapter that the clipping could accept. The clipping does not change, but most reads share such a 2-mer, so mainly low-complexity reads are skipped.", handler=BooleanOptionHandler.class)
+	private boolean adapterPrefilter = false;
+	
+	@Option(name="-band", metaVar="INTEGER", required=false, usage="Restrict the traceback of the adapter alignment to this many diagonals on each side of its end (e.g. 8), so its memory does not grow with the read length, and skip the scores of cells which cannot lead to the best alignment. The result is the same as the full alignment whenever the best alignment has fewer gaps than this. Takes precedence over -simd. 0 uses the full matrix. Default: 0", handler=IntOptionHandler.class)
+	private int alignmentBand = 0;
+	
+	@Option(name="-auto_adapter", metaVar="INTEGER", required=false, usage="Detect the adapters in this many reads at the start of the forward and reverse reads (e.g. 1000000) and clip them instead of -f and -r. The sampled reads are kept in memory and not read again, the input is not memory mapped. If no adapter is found, -f or -r is used. 0 does not detect adapters. Default: 0", handler=IntOptionHandler.class)
+	private int adapterSampleReads = 0;
+	
+	@Option(name="-clipCache", metaVar="INTEGER", required=false, usage="Cache the clipping results of this many read sequences per worker thread (e.g. 100000), so duplicated reads are only searched for adapters once. The hit rate and evictions are reported in the clipping statistics. 0 disables the cache. Default: 0", handler=IntOptionHandler.class)
+	private int clipCacheSize = 0;
+	
 	@Option(name="-no_clip_stats", required=false, usage="Disable the display of clipping statistics.", handler=BooleanOptionHandler.class)
 	private boolean noClipStats = false;
 	
@@ -206,28 +263,31 @@ public class MergeScript {
 	}
 	
 	private long lastTime = -1;
+	private long lastReads = 0;
 	
 	//this method is used by the merge-thread in order to report the current progress state
-	public synchronized void updateProcessBytes(long processedSoFar) throws IOException {
+	//the processed bytes are the bytes read from the input files, for gzipped files these are compressed bytes
+	public synchronized void updateProcessBytes(long processedSoFar, long readsSoFar) throws IOException {
 		if(bytesProcessed != processedSoFar) {
 			if(settings.verbose()) { //perform additional information about process speed
 				if(lastTime == -1) {
 					lastTime = System.currentTimeMillis();
 				} else {
 					long endTime = System.currentTimeMillis();
-					double timeElapsed = Math.round(((endTime-lastTime)/(1000.*60.))*10000.)/10000.;
+					double secondsElapsed = Math.max(endTime - lastTime, 1) / 1000.;
 					lastTime = endTime;
-					long difference = processedSoFar - bytesProcessed;
-					double bytesFraction = Math.round((difference / timeElapsed) * 100.)/100.;
+					long readsPerSecond = Math.round((readsSoFar - lastReads) / secondsElapsed);
+					double mbPerSecond = Math.round(((processedSoFar - bytesProcessed) / (1024. * 1024.) / secondsElapsed) * 100.)/100.;
 					
 					BufferedWriter logWriter = settings.getLogWriter();
 					synchronized (logWriter) {
-						logWriter.write("# Processing speed: " + Double.toString(bytesFraction) + " bytes/minute");
+						logWriter.write("# Processing speed: " + Long.toString(readsPerSecond) + " reads/second, " + Double.toString(mbPerSecond) + " MB/second of input");
 						logWriter.newLine();
 					}
 				}
 			}
 			
+			lastReads = readsSoFar;
 			bytesProcessed = processedSoFar;
 			double fractionProcessed = (double)bytesProcessed / (double)bytesToProcess;
 			
@@ -259,6 +319,14 @@ public class MergeScript {
             return;
 		}
 		
+		//needed when opening the input and output files
+		settings.setThreads(threads);
+		settings.setReadAheadBuffers(readAheadBuffers);
+		settings.setReadAheadBufferSize(readAheadBufferSize * 1024);
+		settings.setOutputThreads(outputThreads);
+		settings.setCompressionLevel(compressionLevel);
+		settings.setBgzfOutput(bgzfOutput);
+		
 		File[] forwardReads = new File[inForward.size()];
 		for(int i = 0; i < inForward.size(); i++) {
 			forwardReads[i] = new File(inForward.get(i));
@@ -313,6 +381,16 @@ public class MergeScript {
 		settings.setNoTimeEstimation(!timeEstimation);
 		settings.setVerbose(verbose);
 		settings.setMaxReadsPerQueue(maxParallelReads);
+		settings.setWaitStrategy(WaitStrategy.parse(waitStrategy));
+		settings.setClippingEngine(ClippingEngine.parse(clippingEngine));
+		settings.setVectorizedAlignment(vectorizedAlignment);
+		settings.setAdapterPrefilter(adapterPrefilter);
+		settings.setAlignmentBand(alignmentBand);
+		settings.setClipCacheSize(clipCacheSize);
+		settings.setMemoryMappedInput(memoryMappedInput);
+		settings.setMergeThreads(mergeThreads);
+		settings.setUnorderedOutput(unorderedOutput);
+		settings.setPairMode(pairMode);
 		settings.setQualityBasedMM(!noQualityBasedMMCalc);
 		
 		if(discardBadReads) {
@@ -324,6 +402,13 @@ public class MergeScript {
 		settings.setTrim5P(trim5p);
 		settings.setLastBaseToKeep(lastBase);
 		
+		if(adapterSampleReads < 0) {
+			throw new RuntimeException("ERROR: The number of reads to detect the adapters in must not be negative ! Exiting ...");
+		}
+		if(!noClipping) {
+			settings.detectAdapters(adapterSampleReads);
+		}
+		
 		this.clipAndMergeThreaded(settings);
 	}
 
@@ -350,6 +435,24 @@ public class MergeScript {
 			logWriter.newLine();
 			logWriter.write("- Skip adapter clipping: " + settings.noClipping());
 			logWriter.newLine();
+			if(settings.getAdapterSampleReads() > 0) {
+				logWriter.write("- Forward adapter: " + settings.getForwardAdapter() + (settings.forwardAdapterDetected() ? " (detected)" : " (not detected)"));
+				logWriter.newLine();
+				if(settings.getReverseReadsStreams() != null) {
+					logWriter.write("- Reverse adapter: " + settings.getReverseAdapter() + (settings.reverseAdapterDetected() ? " (detected)" : " (not detected)"));
+					logWriter.newLine();
+				}
+			}
+			logWriter.write("- Clipping engine: " + settings.getClippingEngine().optionName());
+			logWriter.newLine();
+			logWriter.write("- Adapter prefilter: " + (settings.adapterPrefilter() ? "on" : "off"));
+			logWriter.newLine();
+			logWriter.write("- Alignment band: " + (settings.getAlignmentBand() > 0 ? Integer.toString(settings.getAlignmentBand()) : "full"));
+			logWriter.newLine();
+			logWriter.write("- Clipping cache: " + settings.getClipCacheSize());
+			logWriter.newLine();
+			logWriter.write("- SIMD alignment: " + (settings.vectorizedAlignment() ? (ScoreOnlyAlignment.create(true).vectorized() ? "on" : "not available") : "off"));
+			logWriter.newLine();
 			logWriter.write("- Skip read merging: " + settings.noMerging());
 			logWriter.newLine();
 			logWriter.write("- Handle mate pairs seperately: " + settings.handleMatePairsSeperatly());
@@ -396,6 +499,20 @@ public class MergeScript {
 			logWriter.newLine();
 			logWriter.write("- Maximal number of reads processed in parallel: " + settings.maxReadsPerQueue());
 			logWriter.newLine();
+			logWriter.write("- Memory mapped input: " + settings.memoryMappedInput());
+			logWriter.newLine();
+			logWriter.write("- Number of worker threads: " + settings.getThreads());
+			logWriter.newLine();
+			logWriter.write("- Number of merge threads: " + settings.getMergeThreads() + (settings.unorderedOutput() ? ", unordered output" : ""));
+			logWriter.newLine();
+			logWriter.write("- Pair mode: " + settings.pairMode());
+			logWriter.newLine();
+			logWriter.write("- Wait strategy: " + settings.getWaitStrategy().name().toLowerCase());
+			logWriter.newLine();
+			logWriter.write("- Output compression: level " + settings.getCompressionLevel() + ", " + settings.getOutputThreads() + " thread(s)" + (settings.bgzfOutput() ? ", BGZF" : ""));
+			logWriter.newLine();
+			logWriter.write("- Read-ahead buffers: " + settings.getReadAheadBuffers() + " x " + (settings.getReadAheadBufferSize() / 1024) + " KB");
+			logWriter.newLine();
 			logWriter.write("- Time Estimation: " + settings.timeEstimation());
 			logWriter.newLine();
 			logWriter.write("- Verbose: " + settings.verbose());
@@ -416,8 +533,10 @@ public class MergeScript {
 		
 		MergeThread merger = new MergeThread(this, settings);
 	
-		ForwardClipperThread fCThread = new ForwardClipperThread(merger, settings);
-		ReverseClipperThread rCThread = new ReverseClipperThread(merger, settings);
+		//clipping workers shared by the forward and the reverse reads
+		ExecutorService clippingWorkers = Executors.newFixedThreadPool(settings.getThreads());
+		ForwardClipperThread fCThread = new ForwardClipperThread(merger, settings, clippingWorkers);
+		ReverseClipperThread rCThread = new ReverseClipperThread(merger, settings, clippingWorkers);
 		
 		if(settings.noClipping()) {
 			synchronized (logWriter) {
@@ -433,15 +552,18 @@ public class MergeScript {
 			}
 		}
 		
-		//start threads
+		//start threads, in pair mode the merge thread clips the read pairs itself
 		merger.start();
-		fCThread.start();
-		rCThread.start();
+		if(!settings.pairMode()) {
+			fCThread.start();
+			rCThread.start();
+		}
 		
 		//wait for threads to finish
 		merger.join();
 		fCThread.join();
 		rCThread.join();
+		clippingWorkers.shutdown();
 		
 		//clean up everything after the calculations are finished
 		merger = null;
@@ -16,31 +16,41 @@
 
 package setting;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
+
+import clipping.Adapter;
+import clipping.AdapterDetector;
+import clipping.ClipCache;
+import clipping.ClippingEngine;
+import io.CountingInputStream;
+import io.FastqSample;
+import io.ParallelGzipInputStream;
+import io.ParallelGzipOutputStream;
+import io.ReadAheadInputStream;
+import threads.WaitStrategy;
 
 public class MergeSettings {
 	
-	BufferedReader[] forwardReadsReader = null;
-	BufferedReader[] reverseReadsReader = null;
+	InputStream[] forwardReadsStreams = null;
+	InputStream[] reverseReadsStreams = null;
 	
 	File[] forwardReads = null;
 	File[] reverseReads = null;
 	
+	List<CountingInputStream> inputCounters = new ArrayList<CountingInputStream>();
+	
 	//minimal overlap in order to merge forward and reverse read
 	int p = 10;
 	//discard sequences shorter than l
@@ -61,9 +71,11 @@ public class MergeSettings {
 	
 	String forwardAdapter = "AGATCGGAAGAGCACACGTCTGAACTCCAGTCAC";
 	String reverseAdapter = "AGATCGGAAGAGCGTCGTGTAGGGAAAGAGTGTA";
+	List<Adapter> forwardAdapters = Adapter.parse(forwardAdapter);
+	List<Adapter> reverseAdapters = Adapter.parse(reverseAdapter);
 	
 	BufferedWriter logWriter = new BufferedWriter(new OutputStreamWriter(System.err));
-	BufferedWriter outputWriter = new BufferedWriter(new OutputStreamWriter(System.out));
+	OutputStream outputStream = System.out;
 	
 	boolean noMerging = false;
 	
@@ -80,6 +92,29 @@ public class MergeSettings {
 	
 	int maxReadsPerQueue = 1000;
 	
+	boolean memoryMappedInput = false;
+	int threads = 1;
+	
+	int readAheadBuffers = 4;
+	int readAheadBufferSize = 1 << 20;
+	
+	int outputThreads = 1;
+	
+	int mergeThreads = 1;
+	boolean unorderedOutput = false;
+	boolean pairMode = false;
+	WaitStrategy waitStrategy = WaitStrategy.PARK;
+	ClippingEngine clippingEngine = ClippingEngine.ALIGNMENT;
+	boolean vectorizedAlignment = false;
+	boolean adapterPrefilter = false;
+	int alignmentBand = 0;
+	int adapterSampleReads = 0;
+	int clipCacheSize = 0;
+	boolean forwardAdapterDetected = false;
+	boolean reverseAdapterDetected = false;
+	int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	boolean bgzfOutput = false;
+	
 	int discardBadQualityReadsScore = 0;
 	double minGoodQualityBasePercentage = 0.9;
 	
@@ -95,6 +130,14 @@ public class MergeSettings {
 		return forwardReads[0];
 	}
 	
+	public File[] getForwardReadsFiles() {
+		return this.forwardReads;
+	}
+	
+	public File[] getReverseReadsFiles() {
+		return this.reverseReads;
+	}
+	
 	public void setTrim5P(int trim5P) {
 		this.trim5P = trim5P;
 	}
@@ -162,13 +205,20 @@ public class MergeSettings {
 			throw new RuntimeException("ERROR: Cannot write to file " + f.getAbsolutePath() + " ! Exiting ...");
 		}
 		
-		if(filePath.endsWith(".gz")) {
-			OutputStream gzStream = new GZIPOutputStream(new FileOutputStream(f));
-			Writer decoder = new OutputStreamWriter(gzStream);
-			this.outputWriter = new BufferedWriter(decoder);
-		} else {
-			this.outputWriter = new BufferedWriter(new FileWriter(f));
+		this.outputStream = openOutputStream(f);
+	}
+	
+	/**
+	 * opens an output file, gzipped files are compressed in blocks on a pool of threads
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public OutputStream openOutputStream(File file) throws IOException {
+		if(file.getName().endsWith(".gz")) {
+			return new ParallelGzipOutputStream(new FileOutputStream(file), outputThreads, compressionLevel, bgzfOutput);
 		}
+		return new FileOutputStream(file);
 	}
 	
 	public String getForwardAdapter() {
@@ -177,6 +227,21 @@ public class MergeSettings {
 	
 	public void setForwardAdapter(String fa) {
 		this.forwardAdapter = fa;
+		this.forwardAdapters = Adapter.parse(fa);
+	}
+	
+	/**
+	 * @return the forward adapters, parsed from the forward adapter sequence, list or FASTA file
+	 */
+	public List<Adapter> getForwardAdapters() {
+		return this.forwardAdapters;
+	}
+	
+	/**
+	 * @return the reverse adapters, parsed from the reverse adapter sequence, list or FASTA file
+	 */
+	public List<Adapter> getReverseAdapters() {
+		return this.reverseAdapters;
 	}
 	
 	public String getReverseAdapter() {
@@ -185,6 +250,7 @@ public class MergeSettings {
 	
 	public void setReverseAdapter(String ra) {
 		this.reverseAdapter = ra;
+		this.reverseAdapters = Adapter.parse(ra);
 	}
 	
 	public int getMinMergeOverlap() {
@@ -292,113 +358,110 @@ public class MergeSettings {
 		}
 	}
 	
-	public BufferedReader[] getForwardReadsReader() {
-		return this.forwardReadsReader;
+	public InputStream[] getForwardReadsStreams() {
+		return this.forwardReadsStreams;
 	}
 	
 	public void setForwardReadsReader(File[] forwardReads) throws Exception {
 		
-		this.forwardReadsReader = new BufferedReader[forwardReads.length];
+		this.forwardReadsStreams = new InputStream[forwardReads.length];
 		
 		for(int i = 0; i < forwardReads.length; i++) {
 			if(!forwardReads[i].canRead()) {
 				throw new RuntimeException("ERROR: Cannot read from file " + forwardReads[i].getAbsolutePath() + " ! Exiting ...");
 			}
 			
-			if(forwardReads[i].getName().endsWith(".gz")) {
-				InputStream gzStream = new GZIPInputStream(new FileInputStream(forwardReads[i]));
-				Reader decoder = new InputStreamReader(gzStream);
-				this.forwardReadsReader[i] = new BufferedReader(decoder);
-			} else {
-				this.forwardReadsReader[i] = new BufferedReader(new FileReader(forwardReads[i]));
-			}
+			this.forwardReadsStreams[i] = openInputStream(forwardReads[i]);
 		}
 		this.forwardReads = forwardReads;
 	}
 	
-	public BufferedReader[] getReverseReadsReader() {
-		return this.reverseReadsReader;
+	public InputStream[] getReverseReadsStreams() {
+		return this.reverseReadsStreams;
 	}
 	
 	public void setReverseReadsReader(File[] reverseReads) throws Exception {
 		
-		this.reverseReadsReader = new BufferedReader[reverseReads.length];
+		this.reverseReadsStreams = new InputStream[reverseReads.length];
 		
 		for(int i = 0; i < reverseReads.length; i++) {
 			if(!reverseReads[i].canRead()) {
 				throw new RuntimeException("ERROR: Cannot read from file " + reverseReads[i].getAbsolutePath() + " ! Exiting ...");
 			}
 			
-			if(reverseReads[i].getName().endsWith(".gz")) {
-				InputStream gzStream = new GZIPInputStream(new FileInputStream(reverseReads[i]));
-				Reader decoder = new InputStreamReader(gzStream);
-				this.reverseReadsReader[i] = new BufferedReader(decoder);
-			} else {
-				this.reverseReadsReader[i] = new BufferedReader(new FileReader(reverseReads[i]));
-			}
+			this.reverseReadsStreams[i] = openInputStream(reverseReads[i]);
 		}
 		this.reverseReads = reverseReads;
 	}
 	
-	public long getBytesToProcess() throws IOException {
+	/**
+	 * opens an input file and counts the bytes read from it, BGZF compressed files are decompressed in parallel
+	 * using the number of worker threads, other gzipped files as a single stream
+	 * gzipped files are decompressed ahead of the parser on a separate thread, if read-ahead buffers are used
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private InputStream openInputStream(File file) throws IOException {
+		CountingInputStream counter = new CountingInputStream(new FileInputStream(file));
+		inputCounters.add(counter);
 		
-		long fwdBytes = 0;
-		long rvsBytes = 0;
+		if(!file.getName().endsWith(".gz")) {
+			return counter;
+		}
 		
-		if(noTimeEstimation) {
-			return 0;
+		InputStream in;
+		if(ParallelGzipInputStream.isBgzf(file)) {
+			in = new ParallelGzipInputStream(counter, threads);
+		} else {
+			in = new GZIPInputStream(counter, 1 << 16);
 		}
 		
-		synchronized (logWriter) {
-			logWriter.write("# Estimating the input file sizes ...");
-			logWriter.newLine();
-			logWriter.write("# Note that for gzipped input files, this can take a long time!");
-			logWriter.newLine();
-			logWriter.newLine();
-			logWriter.flush();
+		if(readAheadBuffers > 0) {
+			in = new ReadAheadInputStream(in, readAheadBuffers, readAheadBufferSize);
+		}
+		return in;
+	}
+	
+	/**
+	 * the progress is measured in bytes read from the input files,
+	 * i.e. compressed bytes for gzipped files, so the file sizes are sufficient
+	 * @return the total size of all input files or 0 if no time estimation is performed
+	 */
+	public long getBytesToProcess() {
+		
+		long bytes = 0;
+		
+		if(noTimeEstimation) {
+			return 0;
 		}
 		
 		for(int i = 0; i < forwardReads.length; i++) {
-			if(forwardReads[i].getName().endsWith(".gz")) {
-				try {
-					GZIPInputStream gzStream = new GZIPInputStream(new FileInputStream(forwardReads[i]));
-					long skipped = 0;
-					while(gzStream.available() == 1) {
-						skipped += gzStream.skip(10000000);
-					}
-					fwdBytes = skipped;
-					gzStream.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			} else {
-				fwdBytes = forwardReads[i].length();
-			}
+			bytes += forwardReads[i].length();
 		}
 		
-		for(int i = 0; i < reverseReads.length; i++) {
-			if(reverseReads[i].getName().endsWith(".gz")) {
-				try {
-					GZIPInputStream gzStream = new GZIPInputStream(new FileInputStream(reverseReads[i]));
-					long skipped = 0;
-					while(gzStream.available() == 1) {
-						skipped += gzStream.skip(10000000);
-					}
-					rvsBytes = skipped;
-					gzStream.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			} else {
-				rvsBytes = reverseReads[i].length();
+		if(reverseReads != null) {
+			for(int i = 0; i < reverseReads.length; i++) {
+				bytes += reverseReads[i].length();
 			}
 		}
 		
-		return fwdBytes + rvsBytes;
+		return bytes;
 	}
 	
-	public BufferedWriter getOutputWriter() {
-		return this.outputWriter;
+	/**
+	 * @return the number of bytes read from the input file streams so far
+	 */
+	public long getInputBytesRead() {
+		long bytes = 0;
+		for(CountingInputStream counter : inputCounters) {
+			bytes += counter.getBytesRead();
+		}
+		return bytes;
+	}
+	
+	public OutputStream getOutputStream() {
+		return this.outputStream;
 	}
 	
 	public boolean removeSingleReads() {
@@ -460,6 +523,193 @@ public class MergeSettings {
 	public boolean getQualityBasedMM() {
 		return this.qualityBasedMM;
 	}
+	
+	public void setMemoryMappedInput(boolean mmap) {
+		this.memoryMappedInput = mmap;
+	}
+	
+	public boolean memoryMappedInput() {
+		//the sampled reads are replayed from the input streams
+		return this.memoryMappedInput && this.adapterSampleReads == 0;
+	}
+	
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+	
+	public int getThreads() {
+		return this.threads;
+	}
+	
+	public void setMergeThreads(int threads) {
+		this.mergeThreads = Math.max(1, threads);
+	}
+	
+	public int getMergeThreads() {
+		return this.mergeThreads;
+	}
+	
+	public void setUnorderedOutput(boolean unordered) {
+		this.unorderedOutput = unordered;
+	}
+	
+	public boolean unorderedOutput() {
+		return this.unorderedOutput;
+	}
+	
+	public void setClippingEngine(ClippingEngine clippingEngine) {
+		this.clippingEngine = clippingEngine;
+	}
+	
+	public ClippingEngine getClippingEngine() {
+		return this.clippingEngine;
+	}
+	
+	public void setAdapterPrefilter(boolean adapterPrefilter) {
+		this.adapterPrefilter = adapterPrefilter;
+	}
+	
+	public boolean adapterPrefilter() {
+		return this.adapterPrefilter;
+	}
+	
+	/**
+	 * samples the first reads of the forward and the reverse reads and clips the dominant adapter found in them instead
+	 * of the given adapter, the sampled reads are kept and replayed to the parsers
+	 * @param sampleReads
+	 * @throws IOException
+	 */
+	public void detectAdapters(int sampleReads) throws IOException {
+		if(sampleReads <= 0) {
+			return;
+		}
+		this.adapterSampleReads = sampleReads;
+		
+		String forward = detectAdapter(forwardReadsStreams, sampleReads);
+		if(forward != null) {
+			setForwardAdapter(forward);
+			forwardAdapterDetected = true;
+		}
+		String reverse = detectAdapter(reverseReadsStreams, sampleReads);
+		if(reverse != null) {
+			setReverseAdapter(reverse);
+			reverseAdapterDetected = true;
+		}
+	}
+	
+	private static String detectAdapter(InputStream[] streams, int sampleReads) throws IOException {
+		if(streams == null || streams.length == 0) {
+			return null;
+		}
+		FastqSample sample = new FastqSample(streams[0], sampleReads);
+		streams[0] = sample.replay();
+		
+		return new AdapterDetector().detect(sample.sequences());
+	}
+	
+	public int getAdapterSampleReads() {
+		return this.adapterSampleReads;
+	}
+	
+	public boolean forwardAdapterDetected() {
+		return this.forwardAdapterDetected;
+	}
+	
+	public boolean reverseAdapterDetected() {
+		return this.reverseAdapterDetected;
+	}
+	
+	public void setClipCacheSize(int clipCacheSize) {
+		if(clipCacheSize < 0 || clipCacheSize > ClipCache.MAX_ENTRIES) {
+			throw new RuntimeException("ERROR: The size of the clipping cache has to be between 0 and " + ClipCache.MAX_ENTRIES + " ! Exiting ...");
+		}
+		this.clipCacheSize = clipCacheSize;
+	}
+	
+	public int getClipCacheSize() {
+		return this.clipCacheSize;
+	}
+	
+	public void setAlignmentBand(int alignmentBand) {
+		if(alignmentBand < 0) {
+			throw new RuntimeException("ERROR: The band width of the alignment must not be negative ! Exiting ...");
+		}
+		this.alignmentBand = alignmentBand;
+	}
+	
+	public int getAlignmentBand() {
+		return this.alignmentBand;
+	}
+	
+	public void setVectorizedAlignment(boolean vectorizedAlignment) {
+		this.vectorizedAlignment = vectorizedAlignment;
+	}
+	
+	public boolean vectorizedAlignment() {
+		return this.vectorizedAlignment;
+	}
+	
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+	
+	public WaitStrategy getWaitStrategy() {
+		return this.waitStrategy;
+	}
+	
+	public void setPairMode(boolean pairMode) {
+		this.pairMode = pairMode;
+	}
+	
+	/**
+	 * @return true if both reads of a pair are clipped and merged by the same worker, only possible for paired input
+	 */
+	public boolean pairMode() {
+		return this.pairMode && this.reverseReadsStreams != null;
+	}
+	
+	public void setOutputThreads(int threads) {
+		this.outputThreads = Math.max(1, threads);
+	}
+	
+	public int getOutputThreads() {
+		return this.outputThreads;
+	}
+	
+	public void setCompressionLevel(int level) {
+		if(level < -1 || level > 9) {
+			throw new RuntimeException("ERROR: Invalid compression level " + level + " ! Exiting ...");
+		}
+		this.compressionLevel = level;
+	}
+	
+	public int getCompressionLevel() {
+		return this.compressionLevel;
+	}
+	
+	public void setBgzfOutput(boolean bgzf) {
+		this.bgzfOutput = bgzf;
+	}
+	
+	public boolean bgzfOutput() {
+		return this.bgzfOutput;
+	}
+	
+	public void setReadAheadBuffers(int buffers) {
+		this.readAheadBuffers = Math.max(0, buffers);
+	}
+	
+	public int getReadAheadBuffers() {
+		return this.readAheadBuffers;
+	}
+	
+	public void setReadAheadBufferSize(int bytes) {
+		this.readAheadBufferSize = Math.max(1, bytes);
+	}
+	
+	public int getReadAheadBufferSize() {
+		return this.readAheadBufferSize;
+	}
 
 	public void setLogFile(String logFile) throws Exception {
 		File f = new File(logFile);
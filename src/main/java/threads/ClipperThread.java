@@ -16,30 +16,375 @@
 
 package threads;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import clipping.Clipper;
 import clipping.Read;
+import io.FastqChunk;
+import io.FastqParser;
+import io.FastqRecord;
+import io.FastqSample;
+import io.MappedFastqReader;
+import io.ReadAheadInputStream;
+import setting.MergeSettings;
+
+public abstract class ClipperThread extends Thread {
 
-public class ClipperThread extends Thread {
-	
 	public static final Read nullRead = new Read("null", "", "", "");
-	
-	public static String[] readFourLines(BufferedReader br) throws Exception {
-		String[] fourLines = new String[4];
-		for(int i = 0; i < 4; i++) {
-			String line = br.readLine();
-			if(line == null)
-				return null;
-			fourLines[i] = line;
-		}
-		return fourLines;
-	}
-	
-	protected long bytesProcessed(String[] read) {
-		long processed = 0;
-		for(int i = 0; i < read.length; i++) {
-			processed += read[i].length() + 1;
-		}
-		return processed;
+
+	protected MergeSettings settings;
+
+	protected InputStream[] in;
+	protected File[] files;
+
+	//clips the reads, if no worker threads are used, and collects the statistics of all workers
+	protected Clipper clipper;
+
+	//worker pool shared by the forward and the reverse clipper thread
+	private ExecutorService workers;
+	private BlockingQueue<Clipper> clippers;
+	private List<Clipper> workerClippers;
+
+	protected ClipperThread(MergeSettings settings, ExecutorService workers) {
+		this.settings = settings;
+		this.workers = workers;
+	}
+
+	/**
+	 * @return a new clipper configured for the adapter of this thread
+	 */
+	protected abstract Clipper createClipper();
+
+	/**
+	 * @param settings
+	 * @param forward
+	 * @return a new clipper configured for the forward or the reverse adapters
+	 */
+	public static Clipper createClipper(MergeSettings settings, boolean forward) {
+		Clipper clipper = new Clipper(settings);
+		clipper.setAdapters(forward ? settings.getForwardAdapters() : settings.getReverseAdapters());
+		clipper.setAdapterType(forward ? "forward" : "reverse");
+		clipper.setMinLength(settings.getMinMergeOverlap()); //min merge overlap at this point to guarantee that merging would be possible afterwards
+		clipper.setMinimumAdapterLength(settings.getMinAdapterAlignmentLength());
+		clipper.setDiscardUnknownBases(!settings.keepSequencesWithN());
+		clipper.setEngine(settings.getClippingEngine());
+		clipper.setVectorizedAlignment(settings.vectorizedAlignment());
+		clipper.setAlignmentBand(settings.getAlignmentBand());
+		clipper.setAdapterPrefilter(settings.adapterPrefilter());
+		clipper.setCacheSize(settings.getClipCacheSize());
+		clipper.init();
+		return clipper;
+	}
+
+	/**
+	 * @return the queue handing the reads of this thread over to the merge thread
+	 */
+	protected abstract ReadBatchQueue getQueue();
+
+	/**
+	 * reports the number of input bytes processed outside of the input streams
+	 * @param bytes
+	 */
+	protected abstract void updateBytes(long bytes);
+
+	public void run() {
+		if(in == null) {
+			//no file here, nothing to do -> quit
+			return;
+		}
+
+		for(int i = 0; i < in.length; i++) {
+			try {
+				if(useMemoryMapping(files[i])) {
+					in[i].close();
+					clipMappedFile(files[i]);
+				} else {
+					clipStream(in[i]);
+					reportReadAhead(in[i], files[i]);
+				}
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		}
+
+		if(workerClippers != null) {
+			for(Clipper c : workerClippers) {
+				clipper.addStatistics(c);
+			}
+		}
+
+		if(settings.showClippingStats()) {
+			try {
+				clipper.outputStats(settings.getLogWriter());
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+
+		finishDelivery();
+	}
+
+	/**
+	 * hands a (clipped) read over to the merge thread
+	 * @param read
+	 */
+	protected void deliver(Read read) {
+		try {
+			getQueue().put(read);
+		} catch(InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * hands the remaining reads over to the merge thread and marks the end of the stream
+	 */
+	protected void finishDelivery() {
+		try {
+			getQueue().finish();
+		} catch(InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return true if the file should be read via memory mapping
+	 */
+	protected boolean useMemoryMapping(File file) {
+		return settings.memoryMappedInput() && !file.getName().endsWith(".gz");
+	}
+
+	/**
+	 * reports the occupancy of the read-ahead buffers of an input file, if verbose output is requested
+	 * @param in
+	 * @param file
+	 * @throws IOException
+	 */
+	protected void reportReadAhead(InputStream in, File file) throws IOException {
+		//the reads sampled to detect the adapters are replayed in front of the input stream
+		if(in instanceof FastqSample.Replay) {
+			in = ((FastqSample.Replay)in).source();
+		}
+		if(!settings.verbose() || !(in instanceof ReadAheadInputStream)) {
+			return;
+		}
+		
+		ReadAheadInputStream readAhead = (ReadAheadInputStream)in;
+		double occupancy = Math.round(readAhead.getAverageOccupancy() * 100.) / 100.;
+		BufferedWriter logWriter = settings.getLogWriter();
+		synchronized(logWriter) {
+			logWriter.write("# Read-ahead buffers of " + file.getName() + ": average occupancy " + occupancy + " of " + readAhead.getDepth()
+					+ ", clipping waited " + readAhead.getParserWaits() + " times, decompression waited " + readAhead.getReaderWaits() + " times");
+			logWriter.newLine();
+		}
+	}
+
+	/**
+	 * @return the clippers of the worker threads, each worker takes one for the duration of a task
+	 */
+	private BlockingQueue<Clipper> workerClippers() {
+		if(clippers == null) {
+			int numWorkers = settings.getThreads();
+			clippers = new ArrayBlockingQueue<Clipper>(numWorkers);
+			workerClippers = new ArrayList<Clipper>(numWorkers);
+			for(int i = 0; i < numWorkers; i++) {
+				Clipper c = createClipper();
+				clippers.add(c);
+				workerClippers.add(c);
+			}
+		}
+		return clippers;
+	}
+
+	/**
+	 * Parses a FASTQ stream and clips the reads. With more than one worker thread, the reads are
+	 * clipped in numbered batches on the worker pool and handed over to the merge thread in input order.
+	 * @param stream
+	 * @throws Exception
+	 */
+	protected void clipStream(InputStream stream) throws Exception {
+		FastqParser parser = new FastqParser(stream);
+		FastqRecord record = new FastqRecord();
+
+		if(settings.getThreads() == 1) {
+			while(parser.next(record)) {
+				Read read = record.toRead();
+				if(settings.noClipping()) {
+					deliver(read);
+				} else {
+					deliver(clipper.clip(read));
+				}
+			}
+			parser.close();
+			return;
+		}
+
+		ArrayDeque<Future<ClippedChunk>> pending = new ArrayDeque<Future<ClippedChunk>>();
+		try {
+			List<Read> reads = new ArrayList<Read>(ReadBatch.BATCH_SIZE);
+			while(parser.next(record)) {
+				reads.add(record.toRead());
+				if(reads.size() == ReadBatch.BATCH_SIZE) {
+					submit(new BatchClipper(reads, workerClippers()), pending);
+					reads = new ArrayList<Read>(ReadBatch.BATCH_SIZE);
+				}
+			}
+			if(!reads.isEmpty()) {
+				submit(new BatchClipper(reads, workerClippers()), pending);
+			}
+
+			while(!pending.isEmpty()) {
+				deliver(pending.poll().get());
+			}
+		} finally {
+			for(Future<ClippedChunk> f : pending) {
+				f.cancel(true);
+			}
+			parser.close();
+		}
+	}
+
+	/**
+	 * submits a task to the worker pool and delivers the oldest results to limit the number of tasks in flight
+	 * @param task
+	 * @param pending the results in input order
+	 * @throws Exception
+	 */
+	private void submit(Callable<ClippedChunk> task, ArrayDeque<Future<ClippedChunk>> pending) throws Exception {
+		pending.add(workers.submit(task));
+		if(pending.size() >= 2 * settings.getThreads()) {
+			deliver(pending.poll().get());
+		}
+	}
+
+	/**
+	 * Reads an uncompressed file in chunks, which are parsed and clipped on the worker pool.
+	 * The chunks are handed over to the merge thread in file order.
+	 * For paired input the chunks contain a fixed number of records, so forward and reverse chunks correspond to each other.
+	 * @param file
+	 * @throws Exception
+	 */
+	protected void clipMappedFile(File file) throws Exception {
+		boolean paired = settings.getReverseReadsFiles() != null;
+
+		ArrayDeque<Future<ClippedChunk>> pending = new ArrayDeque<Future<ClippedChunk>>();
+		MappedFastqReader reader = new MappedFastqReader(file);
+
+		try {
+			FastqChunk chunk = paired ? reader.nextChunk(MappedFastqReader.RECORDS_PER_CHUNK) : reader.nextChunk();
+			while(chunk != null) {
+				submit(new ChunkClipper(chunk, workerClippers()), pending);
+				chunk = paired ? reader.nextChunk(MappedFastqReader.RECORDS_PER_CHUNK) : reader.nextChunk();
+			}
+
+			while(!pending.isEmpty()) {
+				deliver(pending.poll().get());
+			}
+		} finally {
+			for(Future<ClippedChunk> f : pending) {
+				f.cancel(true);
+			}
+			reader.close();
+		}
+	}
+
+	private void deliver(ClippedChunk chunk) {
+		updateBytes(chunk.bytes);
+		for(Read read : chunk.reads) {
+			deliver(read);
+		}
+	}
+
+	private static class ClippedChunk {
+		private final List<Read> reads;
+		private final long bytes;
+
+		private ClippedChunk(List<Read> reads, long bytes) {
+			this.reads = reads;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * clips a batch of parsed reads
+	 */
+	private class BatchClipper implements Callable<ClippedChunk> {
+
+		private final List<Read> reads;
+		private final BlockingQueue<Clipper> clippers;
+
+		private BatchClipper(List<Read> reads, BlockingQueue<Clipper> clippers) {
+			this.reads = reads;
+			this.clippers = clippers;
+		}
+
+		public ClippedChunk call() throws Exception {
+			if(settings.noClipping()) {
+				return new ClippedChunk(reads, 0);
+			}
+
+			Clipper clipper = clippers.take();
+			try {
+				for(int i = 0; i < reads.size(); i++) {
+					reads.set(i, clipper.clip(reads.get(i)));
+				}
+			} finally {
+				clippers.put(clipper);
+			}
+			return new ClippedChunk(reads, 0);
+		}
+	}
+
+	private static final ThreadLocal<byte[]> chunkBuffer = new ThreadLocal<byte[]>();
+
+	/**
+	 * parses and clips the records of a single chunk
+	 */
+	private class ChunkClipper implements Callable<ClippedChunk> {
+
+		private final FastqChunk chunk;
+		private final BlockingQueue<Clipper> clippers;
+
+		private ChunkClipper(FastqChunk chunk, BlockingQueue<Clipper> clippers) {
+			this.chunk = chunk;
+			this.clippers = clippers;
+		}
+
+		public ClippedChunk call() throws Exception {
+			byte[] data = chunk.copyTo(chunkBuffer.get());
+			chunkBuffer.set(data);
+
+			FastqParser parser = new FastqParser(data, 0, chunk.length());
+			FastqRecord record = new FastqRecord();
+			List<Read> reads = new ArrayList<Read>(chunk.records() > 0 ? chunk.records() : 1024);
+
+			Clipper clipper = clippers.take();
+			try {
+				while(parser.next(record)) {
+					Read read = record.toRead();
+					if(settings.noClipping()) {
+						reads.add(read);
+					} else {
+						reads.add(clipper.clip(read));
+					}
+				}
+			} finally {
+				clippers.put(clipper);
+			}
+
+			return new ClippedChunk(reads, chunk.length());
+		}
 	}
 }
@@ -17,70 +17,31 @@
 package threads;
 
 import clipping.Clipper;
-import clipping.Read;
 import setting.MergeSettings;
 
-import java.io.BufferedReader;
-import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 public class ForwardClipperThread extends ClipperThread {
 	
-	private BufferedReader[] br;
-	private Clipper clipperF;
 	private MergeThread merger;
-	private MergeSettings settings;
 	
-	public ForwardClipperThread(MergeThread merger, MergeSettings settings) {
-		this.br = settings.getForwardReadsReader();
-		clipperF = new Clipper(settings);
-		clipperF.setAdapter(settings.getForwardAdapter());
-		clipperF.setAdapterType("forward");
-		clipperF.setMinLength(settings.getMinMergeOverlap()); //min merge overlap at this point to guarantee that merging would be possible afterwards
-		clipperF.setMinimumAdapterLength(settings.getMinAdapterAlignmentLength());
-		clipperF.setDiscardUnknownBases(!settings.keepSequencesWithN());
-		clipperF.init();
+	public ForwardClipperThread(MergeThread merger, MergeSettings settings, ExecutorService workers) {
+		super(settings, workers);
+		this.in = settings.getForwardReadsStreams();
+		this.files = settings.getForwardReadsFiles();
 		this.merger = merger;
-		this.settings = settings;
+		this.clipper = createClipper();
 	}
 	
-	public void run() {
-		for(int i = 0; i < this.br.length; i++) {
-			try {
-				if(br == null) {
-					//no file here, nothing to do -> quit
-					merger.shutdownForward();
-					return;
-				}
-				
-				String[] readF = readFourLines(br[i]);
-				while(readF != null) {
-					Read forwardRead = new Read(readF[0], readF[1], readF[2], readF[3]);
-					merger.updateForwardBytes(bytesProcessed(readF));
-					
-					if(settings.noClipping()) {
-						merger.putForwardRead(forwardRead);
-					} else {
-						Read clippedF = clipperF.clip(forwardRead);
-						merger.putForwardRead(clippedF);
-					}
-					
-					readF = readFourLines(br[i]);
-				}
-				
-				br[i].close();
-			} catch (Exception ex) {
-				ex.printStackTrace();
-			}
-		}
-		
-		if(settings.showClippingStats()) {
-			try {
-				clipperF.outputStats(settings.getLogWriter());
-			} catch (IOException ex) {
-				ex.printStackTrace();
-			}
-		}
-		
-		merger.shutdownForward();
+	protected Clipper createClipper() {
+		return createClipper(settings, true);
+	}
+	
+	protected ReadBatchQueue getQueue() {
+		return merger.getForwardQueue();
+	}
+	
+	protected void updateBytes(long bytes) {
+		merger.updateForwardBytes(bytes);
 	}
 }
@@ -16,22 +16,35 @@
 
 package threads;
 
+import clipping.Clipper;
 import clipping.Read;
 import io.DataHandler;
-import io.Statistics;
+import io.FastqParser;
+import io.FastqRecord;
+import io.OutputBatch;
 import main.MergeScript;
 import setting.MergeSettings;
 import trimming.QualityTrimmer;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class MergeThread extends Thread {
 
-	private BlockingQueue<Read> forwardReads;
-	private BlockingQueue<Read> reverseReads;
-
-	Read terminatingRead = new Read("Ende", "", "", "");
+	private ReadBatchQueue forwardReads;
+	private ReadBatchQueue reverseReads;
 
 	private long bytesProcessedForward = 0;
 	private long bytesProcessedReverse = 0;
@@ -40,14 +53,16 @@ public class MergeThread extends Thread {
 	private MergeSettings settings;
 
 	private DataHandler dh;
+	private PairMerger pairMerger;
 
 	public MergeThread(MergeScript mergeScript, MergeSettings settings) throws Exception {
 		this.mergeScript = mergeScript;
 		this.settings = settings;
 		this.dh = new DataHandler(settings);
+		this.pairMerger = new PairMerger(settings, dh);
 
-		forwardReads = new LinkedBlockingQueue<Read>(settings.maxReadsPerQueue());
-		reverseReads = new LinkedBlockingQueue<Read>(settings.maxReadsPerQueue());
+		forwardReads = new ReadBatchQueue(settings.maxReadsPerQueue(), settings.getWaitStrategy());
+		reverseReads = new ReadBatchQueue(settings.maxReadsPerQueue(), settings.getWaitStrategy());
 	}
 
 	public synchronized void updateForwardBytes(long processedBytes) {
@@ -58,36 +73,43 @@ public class MergeThread extends Thread {
 		this.bytesProcessedReverse += processedBytes;
 	}
 
-	public void putForwardRead(Read forwardRead) {
-		try {
-			forwardReads.put(forwardRead);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+	/**
+	 * reports the bytes read from the input files so far, memory mapped files report their processed chunks
+	 * @param numReadsRead
+	 * @throws IOException
+	 */
+	private void reportProgress(long numReadsRead) throws IOException {
+		long processed;
+		synchronized(this) {
+			processed = settings.getInputBytesRead() + bytesProcessedForward + bytesProcessedReverse;
 		}
+		mergeScript.updateProcessBytes(processed, numReadsRead);
 	}
 
-	public void putReverseRead(Read reverseRead) {
-		try {
-			reverseReads.put(reverseRead);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+	/**
+	 * reports how often the clipping and the merging of a strand waited for each other, if verbose output is requested
+	 * @param strand
+	 * @param queue
+	 * @throws IOException
+	 */
+	private void reportStalls(String strand, ReadBatchQueue queue) throws IOException {
+		if(!settings.verbose()) {
+			return;
 		}
-	}
 
-	public void shutdownReverse() {
-		try {
-			reverseReads.put(terminatingRead);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		BufferedWriter logWriter = settings.getLogWriter();
+		synchronized(logWriter) {
+			logWriter.write("# Clipped " + strand + " reads: clipping waited " + queue.getProducerStalls() + " times, merging waited " + queue.getConsumerStalls() + " times");
+			logWriter.newLine();
 		}
 	}
 
-	public void shutdownForward() {
-		try {
-			forwardReads.put(terminatingRead);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
+	public ReadBatchQueue getForwardQueue() {
+		return this.forwardReads;
+	}
+
+	public ReadBatchQueue getReverseQueue() {
+		return this.reverseReads;
 	}
 
 	public void run() {
@@ -99,173 +121,254 @@ public class MergeThread extends Thread {
 
       long numReadPairsRead = 0;
 
-			if(settings.getReverseReadsReader() == null) { //only single end read file available
-				while((forwardRead = forwardReads.take()) != terminatingRead) {
+			if(settings.getReverseReadsStreams() == null) { //only single end read file available
+				long numReadsRead = 0;
+				while((forwardRead = forwardReads.take()) != null) {
 					dh.writeSingleEndRead(forwardRead, "F_");
+
+					numReadsRead++;
+					if(numReadsRead % 100000 == 0) {
+						reportProgress(numReadsRead);
+					}
 				}
+			} else if(settings.pairMode()) {
+				mergeInParallel(new ParserPairSource(), settings.getThreads(), true);
+			} else if(settings.getMergeThreads() > 1) {
+				mergeInParallel(new QueuePairSource(), settings.getMergeThreads(), false);
 			} else { //forward and reverse read files available
-				while ((forwardRead = forwardReads.take()) != terminatingRead
-						&& (reverseRead = reverseReads.take()) != terminatingRead) {
+				while ((forwardRead = forwardReads.take()) != null
+						&& (reverseRead = reverseReads.take()) != null) {
 
           numReadPairsRead++;
 
-					if(forwardRead == ClipperThread.nullRead && reverseRead != ClipperThread.nullRead) {
-						//forward read was an adapter only read and removed already
-						//just output the reverse read if it is long enough
-						dh.writeSingleEndRead(reverseRead, "R_");
-					} else if(reverseRead == ClipperThread.nullRead && forwardRead != ClipperThread.nullRead) {
-						//reverse read was an adapter only read and removed already
-						//just output the forward read if it is long enough
-						dh.writeSingleEndRead(forwardRead, "F_");
-					} else if(forwardRead != ClipperThread.nullRead && reverseRead != ClipperThread.nullRead) {
-						//we have clipped both reads, now we can try to merge them
-						if(settings.noMerging()) {
-							dh.writeMatePairReads(forwardRead, reverseRead);
-						} else {
-							merge(forwardRead, reverseRead, settings.getMinMergeOverlap(), settings.getErrorRateForMerging(), settings.getQualityEncoding(), settings.getQualityBasedMM());
-						}
-					} else {
-						//reads have both been rejected after clipping
-            Statistics.increaseNumReadsFailClipping();
-					}
+					pairMerger.processPair(forwardRead, reverseRead);
 
-					synchronized(this) {
-						if(numReadPairsRead % 100000 == 0) {
-							long processed = Math.round(bytesProcessedForward + bytesProcessedReverse);
-							mergeScript.updateProcessBytes(processed);
-						}
+					if(numReadPairsRead % 100000 == 0) {
+						reportProgress(2 * numReadPairsRead);
 					}
 			    }
 			}
 
+			if(!settings.pairMode()) {
+				reportStalls("forward", forwardReads);
+				if(settings.getReverseReadsStreams() != null) {
+					reportStalls("reverse", reverseReads);
+				}
+			}
 			dh.shutdown();
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
 	}
 
-	public void merge(Read readF, Read readR, int minOverlap, double errRate, int qualityOffset, boolean qualityBasedMM) throws Exception {
-		//get sequences
-		String seqF = readF.sequence;
-		String seqRreverse = reverseComplement(readR.sequence);
-
-		String qualF = readF.quality;
-		StringBuffer reverseQual = new StringBuffer(readR.quality);
-		reverseQual.reverse();
-		String qualR = reverseQual.toString();
-
-		int[] overlapIndex = findOverlap(seqF, seqRreverse, qualF, qualR, minOverlap, errRate, qualityOffset, qualityBasedMM);
-
-		//there is an overlap, build the new sequence
-		if (overlapIndex[0] >= 0 && overlapIndex[1] >= 0) {
-			//define new seq and new qual strings
-			StringBuffer newSeq = new StringBuffer();
-			newSeq.append(readF.sequence.subSequence(0, overlapIndex[0]));
-			StringBuffer newQual = new StringBuffer();
-			newQual.append(readF.quality.substring(0, overlapIndex[0]));
-
-			// calculate overlap
-			int overlap = readF.sequence.length() - overlapIndex[0];
-			dh.setCurrentOverlap(overlap);
-
-			// the better quality decides which nucleotide to use in the new sequence
-			for(int i = 0; i < overlap; i++) {
-				if (qualF.charAt(i+overlapIndex[0]) >= qualR.charAt(i+overlapIndex[1])){
-					newSeq.append(seqF.charAt(i+overlapIndex[0]));
-					newQual.append(qualF.charAt(i+overlapIndex[0]));
-				} else {
-					newSeq.append(seqRreverse.charAt(i+overlapIndex[1]));
-					newQual.append(qualR.charAt(i+overlapIndex[1]));
-				}
-			}
+	/**
+	 * Merges batches of read pairs on a pool of merge workers. Every worker has its own data handler,
+	 * which collects the output and the statistics of a batch. The output of the batches is committed
+	 * to the output files in input order or, if requested, in the order the batches are finished.
+	 * In pair mode the workers parse nothing but clip both reads of a pair before merging them.
+	 * @param source the read pairs
+	 * @param numWorkers
+	 * @param clip true if the workers have to clip the reads
+	 * @throws Exception
+	 */
+	private void mergeInParallel(PairSource source, int numWorkers, boolean clip) throws Exception {
+		final BlockingQueue<PairWorker> pairWorkers = new ArrayBlockingQueue<PairWorker>(numWorkers);
+		List<PairWorker> allWorkers = new ArrayList<PairWorker>(numWorkers);
+		for(int i = 0; i < numWorkers; i++) {
+			PairWorker worker = new PairWorker(clip);
+			pairWorkers.add(worker);
+			allWorkers.add(worker);
+		}
 
-			if(seqRreverse.length() > overlapIndex[1] + overlap) {
-				newSeq.append(seqRreverse.substring(overlapIndex[1] + overlap));
-				newQual.append(qualR.substring(overlapIndex[1] + overlap));
-			}
+		ExecutorService workers = Executors.newFixedThreadPool(numWorkers);
+		CompletionService<OutputBatch> completion = new ExecutorCompletionService<OutputBatch>(workers);
+		ArrayDeque<Future<OutputBatch>> pending = new ArrayDeque<Future<OutputBatch>>();
+		boolean ordered = !settings.unorderedOutput();
+
+		try {
+			long numReadPairsRead = 0;
+			Read[] pair = new Read[2];
+			boolean endReached = false;
+			while(!endReached) {
+				final Read[] forward = new Read[ReadBatch.BATCH_SIZE];
+				final Read[] reverse = new Read[ReadBatch.BATCH_SIZE];
+				int size = 0;
+				while(size < ReadBatch.BATCH_SIZE) {
+					if(!source.next(pair)) {
+						endReached = true;
+						break;
+					}
+					forward[size] = pair[0];
+					reverse[size] = pair[1];
+					size++;
 
-			//replace old read
-			readF.sequence = newSeq.toString();
-			readF.quality = newQual.toString();
-
-			dh.writeSingleEndRead(readF, "M_");
-		} else { //try to flip strands and merge again -> this helps in some cases!
-			int[] overlapIndexReverse = findOverlap(seqRreverse, seqF, qualR, qualF, minOverlap, errRate, qualityOffset, qualityBasedMM);
-
-			if(overlapIndexReverse[0] >= 0 && overlapIndexReverse[1] >= 0) {
-				//calculate overlap
-				int overlap = seqRreverse.length() - overlapIndexReverse[0];
-				dh.setCurrentOverlap(overlap);
-
-				//define new seq and new qual strings
-				StringBuffer newSeq = new StringBuffer();
-				newSeq.append(seqF.substring(0,overlapIndexReverse[1]));
-				StringBuffer newQual = new StringBuffer();
-				newQual.append(qualF.substring(0,overlapIndexReverse[1]));
-
-				// the better quality decides which nucleotide to use in the new sequence
-				for(int i = 0; i < overlap; i++) {
-					if (qualR.charAt(i+overlapIndexReverse[0]) >= qualF.charAt(i+overlapIndexReverse[1])){
-						newSeq.append(seqRreverse.charAt(i+overlapIndexReverse[0]));
-						newQual.append(qualR.charAt(i+overlapIndexReverse[0]));
-					} else {
-						newSeq.append(seqF.charAt(i+overlapIndexReverse[1]));
-						newQual.append(qualF.charAt(i+overlapIndexReverse[1]));
+					numReadPairsRead++;
+					if(numReadPairsRead % 100000 == 0) {
+						reportProgress(2 * numReadPairsRead);
 					}
 				}
 
-				if(overlapIndexReverse[1] > 0 && seqRreverse.length() > overlap) {
-					newSeq.append(seqRreverse.substring(overlap));
-					newQual.append(qualF.substring(overlap));
+				if(size == 0) {
+					break;
 				}
 
-				//replace old read
-				readF.sequence = newSeq.toString();
-				readF.quality = newQual.toString();
-
-
-//				System.out.println("--------");
-//				for(int i = 0; i < overlapIndexReverse[0]; i++)
-//					System.out.print(" ");
-//				System.out.println(seqF);
-//				for(int i = 0; i < overlapIndexReverse[0]; i++)
-//					System.out.print(" ");
-//				System.out.println(qualF);
-//				System.out.println(seqRreverse);
-//				System.out.println(qualR);
-//				for(int i = 0; i < overlapIndexReverse[0]; i++)
-//					System.out.print(" ");
-//				System.out.println(readF.sequence);
-//				for(int i = 0; i < overlapIndexReverse[0]; i++)
-//					System.out.print(" ");
-//				System.out.println(readF.quality);
-//
-//				System.out.println(Arrays.toString(overlapIndexReverse));
-//
-//				System.out.println("Overlap: " + overlap);
-
-				if(!settings.discardBadQualityReads()) {
-					dh.writeSingleEndRead(readF, "M_");
-				} else {
-					if(!badQualityCheck(readF, settings.getMinGoodQualityBasePercentage(),
-							settings.getDiscardBadQualityReadsScore())) {
-						dh.writeSingleEndRead(readF, "M_");
-					} else {
-						Statistics.increaseDiscardedMergedReads();
+				final int pairs = size;
+				Callable<OutputBatch> task = new Callable<OutputBatch>() {
+					public OutputBatch call() throws Exception {
+						PairWorker worker = pairWorkers.take();
+						try {
+							return worker.process(forward, reverse, pairs);
+						} finally {
+							pairWorkers.put(worker);
+						}
 					}
+				};
+				//finished batches are only collected by the completion service if they are committed in that order
+				pending.add(ordered ? workers.submit(task) : completion.submit(task));
+
+				//limit the number of batches in flight
+				if(pending.size() >= 2 * numWorkers) {
+					commit(ordered ? pending.poll() : completion.take(), pending);
+				}
+			}
+
+			while(!pending.isEmpty()) {
+				commit(ordered ? pending.poll() : completion.take(), pending);
+			}
+		} finally {
+			workers.shutdownNow();
+			source.close();
+		}
+
+		if(clip) {
+			Clipper forwardClipper = ClipperThread.createClipper(settings, true);
+			Clipper reverseClipper = ClipperThread.createClipper(settings, false);
+			for(PairWorker worker : allWorkers) {
+				forwardClipper.addStatistics(worker.forwardClipper);
+				reverseClipper.addStatistics(worker.reverseClipper);
+			}
+			if(settings.showClippingStats()) {
+				forwardClipper.outputStats(settings.getLogWriter());
+				reverseClipper.outputStats(settings.getLogWriter());
+			}
+		}
+	}
+
+	/**
+	 * the state of a merge worker, which is used by one task at a time
+	 */
+	private class PairWorker {
+		private final PairMerger merger;
+		private final Clipper forwardClipper;
+		private final Clipper reverseClipper;
+
+		private PairWorker(boolean clip) {
+			DataHandler handler = new DataHandler(settings);
+			handler.setupBatch();
+			this.merger = new PairMerger(settings, handler);
+			dh.addWorkerStatistics(handler.getStatistics());
+			this.forwardClipper = clip ? ClipperThread.createClipper(settings, true) : null;
+			this.reverseClipper = clip ? ClipperThread.createClipper(settings, false) : null;
+		}
+
+		private OutputBatch process(Read[] forward, Read[] reverse, int pairs) throws Exception {
+			for(int i = 0; i < pairs; i++) {
+				Read forwardRead = forward[i];
+				Read reverseRead = reverse[i];
+				if(forwardClipper != null && !settings.noClipping()) {
+					forwardRead = forwardClipper.clip(forwardRead);
+					reverseRead = reverseClipper.clip(reverseRead);
+				}
+				merger.processPair(forwardRead, reverseRead);
+			}
+			return merger.getDataHandler().finishBatch();
+		}
+	}
+
+	/**
+	 * provides the read pairs for the merge workers
+	 */
+	private interface PairSource {
+		/**
+		 * @param pair an array taking the forward and the reverse read
+		 * @return false if one of the reads is not available
+		 * @throws Exception
+		 */
+		boolean next(Read[] pair) throws Exception;
+
+		void close() throws IOException;
+	}
+
+	/**
+	 * the pairs of reads clipped by the clipper threads
+	 */
+	private class QueuePairSource implements PairSource {
+		public boolean next(Read[] pair) throws Exception {
+			pair[0] = forwardReads.take();
+			pair[1] = pair[0] == null ? null : reverseReads.take();
+			return pair[1] != null;
+		}
+
+		public void close() {
+		}
+	}
+
+	/**
+	 * the unclipped pairs of reads parsed from the input files, as used in pair mode
+	 */
+	private class ParserPairSource implements PairSource {
+		private final StrandParser forward = new StrandParser(settings.getForwardReadsStreams());
+		private final StrandParser reverse = new StrandParser(settings.getReverseReadsStreams());
+
+		public boolean next(Read[] pair) throws Exception {
+			pair[0] = forward.next();
+			pair[1] = pair[0] == null ? null : reverse.next();
+			return pair[1] != null;
+		}
+
+		public void close() throws IOException {
+			forward.close();
+			reverse.close();
+		}
+	}
+
+	/**
+	 * parses the input files of one strand one after the other
+	 */
+	private static class StrandParser {
+		private final InputStream[] streams;
+		private int current = -1;
+		private FastqParser parser = null;
+		private final FastqRecord record = new FastqRecord();
+
+		private StrandParser(InputStream[] streams) {
+			this.streams = streams;
+		}
+
+		private Read next() throws IOException {
+			while(parser == null || !parser.next(record)) {
+				if(parser != null) {
+					parser.close();
+					parser = null;
+				}
+				if(++current >= streams.length) {
+					return null;
 				}
+				parser = new FastqParser(streams[current]);
+			}
+			return record.toRead();
+		}
 
-			} else { // no overlap found
-				dh.writeMatePairReads(readF, readR);
+		private void close() throws IOException {
+			if(parser != null) {
+				parser.close();
 			}
 		}
 	}
 
-	public boolean badQualityCheck(Read r, double p, int s) {
-		double rp = QualityTrimmer.getPercentageBadQuality(r, s, settings.getQualityEncoding());
-		//p is the percentage of needed good quality bases
-		//the percentage of allowed bad quality bases is equal to 1-p
-		return rp > (1-p);
+	private void commit(Future<OutputBatch> batch, ArrayDeque<Future<OutputBatch>> pending) throws Exception {
+		pending.remove(batch);
+		dh.write(batch.get());
 	}
 
 	public static String reverseComplement(String string) {
@@ -277,12 +380,41 @@ public class MergeThread extends Thread {
 	}
 
 	public static int[] findOverlap(String seq1, String seq2, String qual1, String qual2, int minOverlap, double errRate, int qualOffset, boolean qualityBasedMM){
-		char[] s1 = seq1.toCharArray();
-		char[] s2 = seq2.toCharArray();
+		return findOverlap(effectiveBases(seq1, qual1, qualOffset, qualityBasedMM), effectiveBases(seq2, qual2, qualOffset, qualityBasedMM), minOverlap, errRate);
+	}
 
-		char[] q1 = qual1.toCharArray();
-		char[] q2 = qual2.toCharArray();
+	/**
+	 * @param sequence
+	 * @param quality
+	 * @param qualOffset
+	 * @param qualityBasedMM
+	 * @return the bases compared by the overlap search, bases with a quality below 10 are 'N' if the mismatches are quality based
+	 */
+	public static char[] effectiveBases(String sequence, String quality, int qualOffset, boolean qualityBasedMM) {
+		char[] bases = sequence.toCharArray();
+		if(qualityBasedMM) {
+			for(int i = 0; i < bases.length; i++) {
+				if(QualityTrimmer.translateQuality(quality.charAt(i), qualOffset) < 10) {
+					bases[i] = 'N';
+				}
+			}
+		}
+		return bases;
+	}
 
+	/**
+	 * finds the overlap of two reads with the most matches, the first one wins if several have as many
+	 *
+	 * The second read is shifted along the first one. If it is longer, it is also shifted against the start of the first read,
+	 * but only there. A shift is given up as soon as it has more mismatches than the error rate allows or too many to have
+	 * more matches than the best overlap so far.
+	 * @param s1 the effective bases of the first read, see {@link #effectiveBases(String, String, int, boolean)}
+	 * @param s2 the effective bases of the second read
+	 * @param minOverlap
+	 * @param errRate
+	 * @return the start of the overlap in the first and in the second read, -1 if there is no overlap
+	 */
+	public static int[] findOverlap(char[] s1, char[] s2, int minOverlap, double errRate) {
 		int n = s1.length;
 		int m = s2.length;
 
@@ -295,92 +427,67 @@ public class MergeThread extends Thread {
 		int currentBestFIndex = -1;
 		int currentBestRIndex = -1;
 		int numMatches = 0;
-		int sum = 0;
-
-		for(int i = start; i < stop; i++) {
-			while(rOffset > 0) {
-				sum = 0;
-				for(int j = 0; j < Math.min(n - i, m); j++) {
-					char one = s1[i+j];
-					char two = s2[j+rOffset];
-					char qualOne = q1[i+j];
-					char qualTwo = q2[j+rOffset];
-					if(qualityBasedMM) {
-						sum += missMatches(one, two, qualOne, qualTwo, qualOffset);
-					} else {
-						sum += missMatches(one, two);
-					}
-				}
-
-				int overlap = n - i;
-				double threshold = overlap * errRate;
-
-				if(sum <= threshold) {
-					int currentMatches = overlap - sum;
-					if(currentMatches > numMatches) {
-						currentBestFIndex = i;
-						currentBestRIndex = rOffset;
-						numMatches = currentMatches;
-					}
-				}
-
-				rOffset--;
-			}
 
-			sum = 0;
-			for(int j = 0; j < Math.min(n - i, m); j++) {
-				char one = s1[i+j];
-				char two = s2[j];
-				char qualOne = q1[i+j];
-				char qualTwo = q2[j];
-				if(qualityBasedMM) {
-					sum += missMatches(one, two, qualOne, qualTwo, qualOffset);
-				} else {
-					sum += missMatches(one, two);
+		if(start < stop) {
+			int overlap = n - start;
+			for(; rOffset > 0; rOffset--) {
+				int sum = missMatches(s1, start, s2, rOffset, Math.min(n - start, m), mismatchBudget(overlap, errRate, numMatches));
+				if(sum >= 0) {
+					currentBestFIndex = start;
+					currentBestRIndex = rOffset;
+					numMatches = overlap - sum;
 				}
 			}
+		}
 
+		for(int i = start; i < stop; i++) {
 			int overlap = n - i;
-			double threshold = overlap * errRate;
+			//the overlaps only get shorter
+			if(overlap <= numMatches) {
+				break;
+			}
 
-			if(sum <= threshold) {
-				int currentMatches = overlap-sum;
-				if(currentMatches > numMatches) {
-					currentBestFIndex = i;
-					currentBestRIndex = rOffset;
-					numMatches = currentMatches;
-				}
+			int sum = missMatches(s1, i, s2, 0, Math.min(n - i, m), mismatchBudget(overlap, errRate, numMatches));
+			if(sum >= 0) {
+				currentBestFIndex = i;
+				currentBestRIndex = 0;
+				numMatches = overlap - sum;
 			}
 		}
 
 		return new int[]{currentBestFIndex, currentBestRIndex};
 	}
 
-	public static int missMatches(char s1, char s2, char q1, char q2, int qualityEncoding) {
-
-		int q1i = QualityTrimmer.translateQuality(q1, qualityEncoding);
-		int q2i = QualityTrimmer.translateQuality(q2, qualityEncoding);
-
-		if(q1i < 10) {
-			s1 = 'N';
+	/**
+	 * @param overlap
+	 * @param errRate
+	 * @param numMatches the matches of the best overlap so far
+	 * @return the number of mismatches an overlap may have to be within the error rate and better than the best one, -1 if none
+	 */
+	private static int mismatchBudget(int overlap, double errRate, int numMatches) {
+		double threshold = overlap * errRate;
+		if(!(threshold >= 0)) {
+			return -1;
 		}
-
-		if(q2i < 10) {
-			s2 = 'N';
-		}
-
-		if (s1 == s2 || s1 == 'N' || s2 == 'N') {
-			return 0;
-		}
-
-		return 1;
+		return (int)Math.min(Math.floor(threshold), overlap - numMatches - 1);
 	}
 
-	public static int missMatches(char s1, char s2) {
-		if (s1 == s2 || s1 == 'N' || s2 == 'N') {
-			return 0;
+	/**
+	 * @return the mismatches of two stretches of bases, -1 if they are more than the budget
+	 */
+	private static int missMatches(char[] s1, int start1, char[] s2, int start2, int length, int budget) {
+		if(budget < 0) {
+			return -1;
+		}
+		int sum = 0;
+		for(int j = 0; j < length; j++) {
+			char one = s1[start1 + j];
+			char two = s2[start2 + j];
+			if(one != two && one != 'N' && two != 'N' && ++sum > budget) {
+				return -1;
+			}
 		}
-		return 1;
+		return sum;
 	}
 
 	public static char replace(char in) {
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package threads;
+
+import clipping.Read;
+import io.DataHandler;
+import setting.MergeSettings;
+import trimming.QualityTrimmer;
+
+
+/**
+ * Decides for a pair of clipped reads whether they are merged, written as mate pairs or as single reads.
+ * Every merge worker has its own instance with its own data handler.
+ */
+public class PairMerger {
+
+	private MergeSettings settings;
+	private DataHandler dh;
+
+	public PairMerger(MergeSettings settings, DataHandler dh) {
+		this.settings = settings;
+		this.dh = dh;
+	}
+
+	public DataHandler getDataHandler() {
+		return this.dh;
+	}
+
+	/**
+	 * processes a pair of clipped reads, rejected reads are given as {@link ClipperThread#nullRead}
+	 * @param forwardRead
+	 * @param reverseRead
+	 * @throws Exception
+	 */
+	public void processPair(Read forwardRead, Read reverseRead) throws Exception {
+		if(forwardRead == ClipperThread.nullRead && reverseRead != ClipperThread.nullRead) {
+			//forward read was an adapter only read and removed already
+			//just output the reverse read if it is long enough
+			dh.writeSingleEndRead(reverseRead, "R_");
+		} else if(reverseRead == ClipperThread.nullRead && forwardRead != ClipperThread.nullRead) {
+			//reverse read was an adapter only read and removed already
+			//just output the forward read if it is long enough
+			dh.writeSingleEndRead(forwardRead, "F_");
+		} else if(forwardRead != ClipperThread.nullRead && reverseRead != ClipperThread.nullRead) {
+			//we have clipped both reads, now we can try to merge them
+			if(settings.noMerging()) {
+				dh.writeMatePairReads(forwardRead, reverseRead);
+			} else {
+				merge(forwardRead, reverseRead, settings.getMinMergeOverlap(), settings.getErrorRateForMerging(), settings.getQualityEncoding(), settings.getQualityBasedMM());
+			}
+		} else {
+			//reads have both been rejected after clipping
+			dh.getStatistics().increaseNumReadsFailClipping();
+		}
+	}
+
+	public void merge(Read readF, Read readR, int minOverlap, double errRate, int qualityOffset, boolean qualityBasedMM) throws Exception {
+		//get sequences
+		String seqF = readF.sequence;
+		String seqRreverse = MergeThread.reverseComplement(readR.sequence);
+
+		String qualF = readF.quality;
+		StringBuffer reverseQual = new StringBuffer(readR.quality);
+		reverseQual.reverse();
+		String qualR = reverseQual.toString();
+
+		//the bases compared by the overlap search of both orientations
+		char[] basesF = MergeThread.effectiveBases(seqF, qualF, qualityOffset, qualityBasedMM);
+		char[] basesR = MergeThread.effectiveBases(seqRreverse, qualR, qualityOffset, qualityBasedMM);
+
+		int[] overlapIndex = MergeThread.findOverlap(basesF, basesR, minOverlap, errRate);
+
+		//there is an overlap, build the new sequence
+		if (overlapIndex[0] >= 0 && overlapIndex[1] >= 0) {
+			//define new seq and new qual strings
+			StringBuffer newSeq = new StringBuffer();
+			newSeq.append(readF.sequence.subSequence(0, overlapIndex[0]));
+			StringBuffer newQual = new StringBuffer();
+			newQual.append(readF.quality.substring(0, overlapIndex[0]));
+
+			// calculate overlap
+			int overlap = readF.sequence.length() - overlapIndex[0];
+			dh.setCurrentOverlap(overlap);
+
+			// the better quality decides which nucleotide to use in the new sequence
+			for(int i = 0; i < overlap; i++) {
+				if (qualF.charAt(i+overlapIndex[0]) >= qualR.charAt(i+overlapIndex[1])){
+					newSeq.append(seqF.charAt(i+overlapIndex[0]));
+					newQual.append(qualF.charAt(i+overlapIndex[0]));
+				} else {
+					newSeq.append(seqRreverse.charAt(i+overlapIndex[1]));
+					newQual.append(qualR.charAt(i+overlapIndex[1]));
+				}
+			}
+
+			if(seqRreverse.length() > overlapIndex[1] + overlap) {
+				newSeq.append(seqRreverse.substring(overlapIndex[1] + overlap));
+				newQual.append(qualR.substring(overlapIndex[1] + overlap));
+			}
+
+			//replace old read
+			readF.sequence = newSeq.toString();
+			readF.quality = newQual.toString();
+
+			dh.writeSingleEndRead(readF, "M_");
+		} else { //try to flip strands and merge again -> this helps in some cases!
+			int[] overlapIndexReverse = MergeThread.findOverlap(basesR, basesF, minOverlap, errRate);
+
+			if(overlapIndexReverse[0] >= 0 && overlapIndexReverse[1] >= 0) {
+				//calculate overlap
+				int overlap = seqRreverse.length() - overlapIndexReverse[0];
+				dh.setCurrentOverlap(overlap);
+
+				//define new seq and new qual strings
+				StringBuffer newSeq = new StringBuffer();
+				newSeq.append(seqF.substring(0,overlapIndexReverse[1]));
+				StringBuffer newQual = new StringBuffer();
+				newQual.append(qualF.substring(0,overlapIndexReverse[1]));
+
+				// the better quality decides which nucleotide to use in the new sequence
+				for(int i = 0; i < overlap; i++) {
+					if (qualR.charAt(i+overlapIndexReverse[0]) >= qualF.charAt(i+overlapIndexReverse[1])){
+						newSeq.append(seqRreverse.charAt(i+overlapIndexReverse[0]));
+						newQual.append(qualR.charAt(i+overlapIndexReverse[0]));
+					} else {
+						newSeq.append(seqF.charAt(i+overlapIndexReverse[1]));
+						newQual.append(qualF.charAt(i+overlapIndexReverse[1]));
+					}
+				}
+
+				if(overlapIndexReverse[1] > 0 && seqRreverse.length() > overlap) {
+					newSeq.append(seqRreverse.substring(overlap));
+					newQual.append(qualF.substring(overlap));
+				}
+
+				//replace old read
+				readF.sequence = newSeq.toString();
+				readF.quality = newQual.toString();
+
+
+//				System.out.println("--------");
+//				for(int i = 0; i < overlapIndexReverse[0]; i++)
+//					System.out.print(" ");
+//				System.out.println(seqF);
+//				for(int i = 0; i < overlapIndexReverse[0]; i++)
+//					System.out.print(" ");
+//				System.out.println(qualF);
+//				System.out.println(seqRreverse);
+//				System.out.println(qualR);
+//				for(int i = 0; i < overlapIndexReverse[0]; i++)
+//					System.out.print(" ");
+//				System.out.println(readF.sequence);
+//				for(int i = 0; i < overlapIndexReverse[0]; i++)
+//					System.out.print(" ");
+//				System.out.println(readF.quality);
+//
+//				System.out.println(Arrays.toString(overlapIndexReverse));
+//
+//				System.out.println("Overlap: " + overlap);
+
+				if(!settings.discardBadQualityReads()) {
+					dh.writeSingleEndRead(readF, "M_");
+				} else {
+					if(!badQualityCheck(readF, settings.getMinGoodQualityBasePercentage(),
+							settings.getDiscardBadQualityReadsScore())) {
+						dh.writeSingleEndRead(readF, "M_");
+					} else {
+						dh.getStatistics().increaseDiscardedMergedReads();
+					}
+				}
+
+			} else { // no overlap found
+				dh.writeMatePairReads(readF, readR);
+			}
+		}
+	}
+
+	public boolean badQualityCheck(Read r, double p, int s) {
+		double rp = QualityTrimmer.getPercentageBadQuality(r, s, settings.getQualityEncoding());
+		//p is the percentage of needed good quality bases
+		//the percentage of allowed bad quality bases is equal to 1-p
+		return rp > (1-p);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package threads;
+
+import clipping.Read;
+
+/**
+ * A fixed size batch of reads handed over between threads,
+ * the last batch of a stream is marked explicitly
+ */
+public class ReadBatch {
+
+	public static final int BATCH_SIZE = 4096;
+
+	final Read[] reads;
+	int size = 0;
+	boolean last = false;
+
+	public ReadBatch() {
+		this(BATCH_SIZE);
+	}
+
+	public ReadBatch(int capacity) {
+		this.reads = new Read[capacity];
+	}
+
+	/**
+	 * @param read
+	 * @return true if the batch is full afterwards
+	 */
+	public boolean add(Read read) {
+		reads[size++] = read;
+		return size == reads.length;
+	}
+
+	public Read get(int i) {
+		return reads[i];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isFull() {
+		return size == reads.length;
+	}
+
+	/**
+	 * @return true if this is the last batch of the stream
+	 */
+	public boolean isLast() {
+		return this.last;
+	}
+
+	public void setLast(boolean last) {
+		this.last = last;
+	}
+
+	/**
+	 * empties the batch for reuse
+	 */
+	public void clear() {
+		for(int i = 0; i < size; i++) {
+			reads[i] = null;
+		}
+		size = 0;
+		last = false;
+	}
+}
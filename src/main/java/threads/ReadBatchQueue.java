@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package threads;
+
+import clipping.Read;
+
+/**
+ * Hands reads from one producer to one consumer in batches.
+ * The number of batches in flight is bounded and consumed batches are recycled,
+ * both directions use lock-free rings, so handing over a batch allocates nothing.
+ */
+public class ReadBatchQueue {
+
+	private final SpscRing<ReadBatch> filled;
+	//consumed batches travel back from the consumer to the producer
+	private final SpscRing<ReadBatch> free;
+
+	//producer side
+	private ReadBatch writeBatch = null;
+
+	//consumer side
+	private ReadBatch readBatch = null;
+	private int readPosition = 0;
+
+	/**
+	 * @param maxReads the maximal number of reads in flight, rounded up to whole batches
+	 */
+	public ReadBatchQueue(int maxReads) {
+		this(maxReads, WaitStrategy.PARK);
+	}
+
+	/**
+	 * @param maxReads the maximal number of reads in flight, rounded up to whole batches
+	 * @param waitStrategy how the producer and the consumer wait for each other
+	 */
+	public ReadBatchQueue(int maxReads, WaitStrategy waitStrategy) {
+		int batches = Math.max(2, (maxReads + ReadBatch.BATCH_SIZE - 1) / ReadBatch.BATCH_SIZE);
+		this.filled = new SpscRing<ReadBatch>(batches, waitStrategy);
+		this.free = new SpscRing<ReadBatch>(batches + 2, waitStrategy);
+	}
+
+	/**
+	 * @return an empty batch, recycled if possible
+	 */
+	public ReadBatch emptyBatch() {
+		ReadBatch batch = free.poll();
+		return batch != null ? batch : new ReadBatch();
+	}
+
+	public void putBatch(ReadBatch batch) throws InterruptedException {
+		filled.put(batch);
+	}
+
+	public ReadBatch takeBatch() throws InterruptedException {
+		return filled.take();
+	}
+
+	/**
+	 * hands a consumed batch back for reuse
+	 * @param batch
+	 */
+	public void recycle(ReadBatch batch) {
+		batch.clear();
+		free.offer(batch);
+	}
+
+	/**
+	 * @return how often the producer had to wait for the consumer
+	 */
+	public long getProducerStalls() {
+		return filled.getProducerStalls();
+	}
+
+	/**
+	 * @return how often the consumer had to wait for the producer
+	 */
+	public long getConsumerStalls() {
+		return filled.getConsumerStalls();
+	}
+
+	/**
+	 * adds a read to the current batch of the producer, which is handed over when it is full
+	 * @param read
+	 * @throws InterruptedException
+	 */
+	public void put(Read read) throws InterruptedException {
+		if(writeBatch == null) {
+			writeBatch = emptyBatch();
+		}
+		if(writeBatch.add(read)) {
+			putBatch(writeBatch);
+			writeBatch = null;
+		}
+	}
+
+	/**
+	 * hands over the remaining reads of the producer as the last batch
+	 * @throws InterruptedException
+	 */
+	public void finish() throws InterruptedException {
+		if(writeBatch == null) {
+			writeBatch = emptyBatch();
+		}
+		writeBatch.setLast(true);
+		putBatch(writeBatch);
+		writeBatch = null;
+	}
+
+	/**
+	 * @return the next read of the consumer or null at the end of the stream
+	 * @throws InterruptedException
+	 */
+	public Read take() throws InterruptedException {
+		while(readBatch == null || readPosition == readBatch.size()) {
+			if(readBatch != null) {
+				if(readBatch.isLast()) {
+					return null;
+				}
+				recycle(readBatch);
+			}
+			readBatch = takeBatch();
+			readPosition = 0;
+		}
+		return readBatch.get(readPosition++);
+	}
+}
@@ -16,73 +16,32 @@
 
 package threads;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-
-import setting.MergeSettings;
 import clipping.Clipper;
-import clipping.Read;
+import setting.MergeSettings;
+
+import java.util.concurrent.ExecutorService;
 
 public class ReverseClipperThread extends ClipperThread {
 	
-	private BufferedReader[] br;
-	private Clipper clipperR;
 	private MergeThread merger;
-	private MergeSettings settings;
 	
-	public ReverseClipperThread(MergeThread merger, MergeSettings settings) {
-		this.br = settings.getReverseReadsReader();
-		clipperR = new Clipper(settings);
-		clipperR.setAdapter(settings.getReverseAdapter());
-		clipperR.setAdapterType("reverse");
-		clipperR.setMinLength(settings.getMinMergeOverlap()); //min merge overlap at this point to guarantee that merging would be possible afterwards
-		clipperR.setMinimumAdapterLength(settings.getMinAdapterAlignmentLength());
-		clipperR.setDiscardUnknownBases(!settings.keepSequencesWithN());
-		clipperR.init();
+	public ReverseClipperThread(MergeThread merger, MergeSettings settings, ExecutorService workers) {
+		super(settings, workers);
+		this.in = settings.getReverseReadsStreams();
+		this.files = settings.getReverseReadsFiles();
 		this.merger = merger;
-		this.settings = settings;
+		this.clipper = createClipper();
+	}
+	
+	protected Clipper createClipper() {
+		return createClipper(settings, false);
+	}
+	
+	protected ReadBatchQueue getQueue() {
+		return merger.getReverseQueue();
 	}
 	
-	public void run() {
-		if(this.br != null) {
-			for(int i = 0; i < this.br.length; i++) {
-				try {
-					if(br == null) {
-						//no file here, nothing to do -> quit
-						merger.shutdownReverse();
-						return;
-					}
-					
-					String[] readR = readFourLines(br[i]);
-					while(readR != null) {
-						Read reverseRead = new Read(readR[0], readR[1], readR[2], readR[3]);
-						merger.updateReverseBytes(bytesProcessed(readR));
-						
-						if(settings.noClipping()) {
-							merger.putReverseRead(reverseRead);
-						} else {
-							Read clippedR = clipperR.clip(reverseRead);
-							merger.putReverseRead(clippedR);
-						}
-						
-						readR = readFourLines(br[i]);
-					}
-					br[i].close();
-					
-				} catch (Exception ex) {
-					ex.printStackTrace();
-				}
-			}
-			
-			if(settings.showClippingStats()) {
-				try {
-					clipperR.outputStats(settings.getLogWriter());
-				} catch (IOException ex) {
-					ex.printStackTrace();
-				}
-			}
-			
-			merger.shutdownReverse();
-		}
+	protected void updateBytes(long bytes) {
+		merger.updateReverseBytes(bytes);
 	}
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package threads;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded lock-free ring buffer for exactly one producer thread and one consumer thread.
+ *
+ * The slots are allocated once, the producer and the consumer only publish their positions with ordered writes.
+ * Each side caches the last position it has seen of the other side, so the shared positions are only read
+ * if the ring looks full or empty. The number of times each side found the ring full or empty is counted.
+ * @param <T> the elements, null is not allowed
+ */
+public class SpscRing<T> {
+
+	/**
+	 * a position padded to a cache line of its own, together with the fields only its owner uses
+	 */
+	@SuppressWarnings("serial")
+	private static final class Sequence extends AtomicLong {
+		//the last seen position of the other side
+		long cache = 0;
+		long stalls = 0;
+		long p1, p2, p3, p4, p5, p6;
+	}
+
+	private final Object[] slots;
+	private final int mask;
+	private final int capacity;
+	private final WaitStrategy waitStrategy;
+
+	//next position to read, written by the consumer
+	private final Sequence head = new Sequence();
+	//next position to write, written by the producer
+	private final Sequence tail = new Sequence();
+
+	/**
+	 * @param capacity the maximal number of elements in the ring
+	 * @param waitStrategy
+	 */
+	public SpscRing(int capacity, WaitStrategy waitStrategy) {
+		this.capacity = Math.max(1, capacity);
+		int size = Integer.highestOneBit(this.capacity);
+		if(size < this.capacity) {
+			size <<= 1;
+		}
+		this.slots = new Object[size];
+		this.mask = size - 1;
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * @param element
+	 * @return false if the ring is full
+	 */
+	public boolean offer(T element) {
+		if(element == null) {
+			throw new NullPointerException();
+		}
+		long t = tail.get();
+		if(t - tail.cache >= capacity) {
+			tail.cache = head.get();
+			if(t - tail.cache >= capacity) {
+				return false;
+			}
+		}
+		slots[(int)t & mask] = element;
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * adds an element, waiting while the ring is full
+	 * @param element
+	 * @throws InterruptedException
+	 */
+	public void put(T element) throws InterruptedException {
+		if(offer(element)) {
+			return;
+		}
+		tail.stalls++;
+		int attempt = 0;
+		while(!offer(element)) {
+			if(Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			waitStrategy.idle(++attempt);
+		}
+	}
+
+	/**
+	 * @return the next element or null if the ring is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		long h = head.get();
+		if(h >= head.cache) {
+			head.cache = tail.get();
+			if(h >= head.cache) {
+				return null;
+			}
+		}
+		int index = (int)h & mask;
+		T element = (T)slots[index];
+		slots[index] = null;
+		head.lazySet(h + 1);
+		return element;
+	}
+
+	/**
+	 * removes the next element, waiting while the ring is empty
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public T take() throws InterruptedException {
+		T element = poll();
+		if(element != null) {
+			return element;
+		}
+		head.stalls++;
+		int attempt = 0;
+		while((element = poll()) == null) {
+			if(Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			waitStrategy.idle(++attempt);
+		}
+		return element;
+	}
+
+	public int capacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return how often the producer found the ring full, exact once the producer is finished
+	 */
+	public long getProducerStalls() {
+		return tail.stalls;
+	}
+
+	/**
+	 * @return how often the consumer found the ring empty, exact once the consumer is finished
+	 */
+	public long getConsumerStalls() {
+		return head.stalls;
+	}
+}
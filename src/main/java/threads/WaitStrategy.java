@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package threads;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Defines how a thread waits for a full or empty {@link SpscRing}.
+ * SPIN keeps the core busy and reacts fastest, YIELD gives the core to other threads after a few spins
+ * and PARK additionally sleeps for short periods, which is the right choice if there are fewer cores than threads.
+ */
+public enum WaitStrategy {
+	SPIN, YIELD, PARK;
+
+	private static final int SPINS = 100;
+	private static final int YIELDS = 100;
+	private static final long PARK_NANOS = 50000;
+
+	/**
+	 * waits once
+	 * @param attempt the number of failed attempts so far, starting at 1
+	 */
+	public void idle(int attempt) {
+		switch(this) {
+			case SPIN:
+				break;
+			case YIELD:
+				if(attempt > SPINS) {
+					Thread.yield();
+				}
+				break;
+			case PARK:
+				if(attempt > SPINS + YIELDS) {
+					LockSupport.parkNanos(PARK_NANOS);
+				} else if(attempt > SPINS) {
+					Thread.yield();
+				}
+				break;
+		}
+	}
+
+	/**
+	 * @param name spin, yield or park
+	 * @return
+	 */
+	public static WaitStrategy parse(String name) {
+		for(WaitStrategy strategy : values()) {
+			if(strategy.name().equalsIgnoreCase(name)) {
+				return strategy;
+			}
+		}
+		throw new RuntimeException("ERROR: Unknown wait strategy " + name + " ! Exiting ...");
+	}
+}
@@ -0,0 +1,93 @@
+import clipping.AdapterDetector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the detection of the 3' adapter from a sample of reads.
+ */
+public class AdapterDetectorTest {
+
+    private static final String[] ADAPTERS = {
+            "AGATCGGAAGAGCACACGTCTGAACTCCAGTCAC",
+            "AGATCGGAAGAGCGTCGTGTAGGGAAAGAGTGTA",
+            "CTGTCTCTTATACACATCT",
+    };
+    //sample index and flow cell adapter following the TruSeq adapter
+    private static final String INDEX = "ATCACGATCTCGTATGCCGTCTTCTGCTTG";
+
+    private static final int READ_LENGTH = 100;
+
+    /**
+     * @return reads of inserts of 20 to 169 nucleotides, followed by the adapter, the index and a poly-A tail
+     */
+    private static List<String> reads(Random random, String adapter) {
+        List<String> reads = new ArrayList<String>();
+        for(int i = 0; i < 5000; i++) {
+            int insert = 20 + random.nextInt(150);
+            StringBuilder read = new StringBuilder(AlignmentTest.randomSequence(random, Math.min(insert, READ_LENGTH)));
+            read.append(adapter).append(INDEX);
+            while(read.length() < READ_LENGTH) {
+                read.append('A');
+            }
+            reads.add(read.substring(0, READ_LENGTH));
+        }
+        return reads;
+    }
+
+    @Test
+    public void detects_the_adapter_of_short_inserts() {
+        Random random = new Random(19);
+        for(String adapter : ADAPTERS) {
+            //the adapter is not known to end in front of the index
+            String expected = (adapter + INDEX).substring(0, AdapterDetector.MAX_ADAPTER_LENGTH);
+            assertEquals(expected, new AdapterDetector().detect(reads(random, adapter)));
+        }
+    }
+
+    @Test
+    public void detects_no_adapter_in_random_reads() {
+        Random random = new Random(29);
+        List<String> reads = new ArrayList<String>();
+        for(int i = 0; i < 5000; i++) {
+            reads.add(AlignmentTest.randomSequence(random, READ_LENGTH));
+        }
+        assertNull(new AdapterDetector().detect(reads));
+    }
+
+    @Test
+    public void ignores_repeats_inside_of_the_reads() {
+        Random random = new Random(31);
+        String repeat = AlignmentTest.randomSequence(random, 40);
+        List<String> reads = new ArrayList<String>();
+        for(int i = 0; i < 5000; i++) {
+            //a third of the reads contains the repeat at a random position, followed by the rest of the insert
+            StringBuilder read = new StringBuilder(AlignmentTest.randomSequence(random, random.nextInt(READ_LENGTH)));
+            if(i % 3 == 0) {
+                read.append(repeat);
+            }
+            read.append(AlignmentTest.randomSequence(random, READ_LENGTH));
+            reads.add(read.substring(0, READ_LENGTH));
+        }
+        assertNull(new AdapterDetector().detect(reads));
+    }
+
+    @Test
+    public void ignores_poly_g_tails() {
+        Random random = new Random(37);
+        List<String> reads = new ArrayList<String>();
+        for(int i = 0; i < 5000; i++) {
+            StringBuilder read = new StringBuilder(AlignmentTest.randomSequence(random, random.nextInt(READ_LENGTH)));
+            while(read.length() < READ_LENGTH) {
+                read.append(i % 2 == 0 ? "G" : "GT");
+            }
+            reads.add(read.substring(0, READ_LENGTH));
+        }
+        assertNull(new AdapterDetector().detect(reads));
+    }
+}
@@ -0,0 +1,109 @@
+import clipping.AdapterPrefilter;
+import clipping.Clipper;
+import clipping.HalfLocalSequenceAlignment;
+import clipping.Read;
+import org.junit.Test;
+import setting.MergeSettings;
+
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the adapter prefilter never skips a read the alignment clips.
+ */
+public class AdapterPrefilterTest {
+
+    private static final String[] ADAPTERS = {
+            "AGATCGGAAGAGCACACGTCTGAACTCCAGTCAC",
+            "AGATCGGAAGAGCGTCGTGTAGGGAAAGAGTGTA",
+            "CTGTCTCTTATA",
+    };
+
+    //low-complexity reads, which share fewer 2-mers with the adapters
+    private static final String[] ALPHABETS = {"ACGT", "AT", "CT", "GT", "TTTTTTTA", "TTTTTTTC"};
+
+    private static String randomRead(Random random, String adapter) {
+        if(random.nextBoolean()) {
+            return AlignmentTest.randomRead(random, adapter);
+        }
+        String alphabet = ALPHABETS[random.nextInt(ALPHABETS.length)];
+        StringBuilder read = new StringBuilder();
+        for(int i = random.nextInt(60); i >= 0; i--) {
+            read.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return read.toString();
+    }
+
+    @Test
+    public void skipped_reads_are_not_clipped_by_the_alignment() throws Exception {
+        Random random = new Random(41);
+        Clipper clipper = new Clipper(new MergeSettings());
+        HalfLocalSequenceAlignment alignment = new HalfLocalSequenceAlignment();
+        int skipped = 0;
+        for(String adapter : ADAPTERS) {
+            AdapterPrefilter prefilter = new AdapterPrefilter(adapter);
+            for(int i = 0; i < 30000; i++) {
+                String read = randomRead(random, adapter);
+                if(prefilter.mayContainAdapter(read)) {
+                    continue;
+                }
+                skipped++;
+                alignment.align(read, adapter);
+                assertEquals(read, -1, clipper.adapterCutoffIndex(alignment.results()));
+            }
+        }
+        assertTrue("skipped " + skipped, skipped > 1000);
+    }
+
+    @Test
+    public void reads_with_an_acceptable_seed_are_aligned() {
+        AdapterPrefilter prefilter = new AdapterPrefilter(ADAPTERS[0]);
+        //a 2-mer late in the adapter, an early 2-mer at the end of the read and the first adapter nucleotide at its end
+        assertTrue(prefilter.mayContainAdapter("TTTTTTTTCGTTTTTTTT"));
+        assertTrue(prefilter.mayContainAdapter("TTTTTTTTTTTTTTTTAT"));
+        assertTrue(prefilter.mayContainAdapter("TTTTTTTTTTTTTTTTATT"));
+        assertTrue(prefilter.mayContainAdapter("TTTTTTTTTTTTTTTTTA"));
+        //an early 2-mer of the adapter within the read
+        assertFalse(prefilter.mayContainAdapter("TTTTTTTTATTTTTTTTT"));
+        assertFalse(prefilter.mayContainAdapter("TTTTTTTTTTTTTTTTTT"));
+        assertTrue(prefilter.mayContainAdapter("TTTTTTTTNTTTTTTTTT"));
+    }
+
+    @Test
+    public void clipper_counts_the_skipped_alignments() throws Exception {
+        Random random = new Random(43);
+        String adapter = ADAPTERS[0];
+        AdapterPrefilter prefilter = new AdapterPrefilter(adapter);
+        Clipper filtered = new Clipper(new MergeSettings());
+        filtered.setAdapter(adapter);
+        filtered.setAdapterPrefilter(true);
+        filtered.init();
+        Clipper aligned = new Clipper(new MergeSettings());
+        aligned.setAdapter(adapter);
+        aligned.init();
+
+        int skipped = 0;
+        for(int i = 0; i < 5000; i++) {
+            String sequence = randomRead(random, adapter);
+            String quality = sequence.replaceAll(".", "!");
+            if(!prefilter.mayContainAdapter(sequence)) {
+                skipped++;
+            }
+            String clipped = filtered.clip(new Read("@Filtered", sequence, "+", quality)).sequence;
+            String expected = aligned.clip(new Read("@Aligned", sequence, "+", quality)).sequence;
+            assertEquals(expected, clipped);
+        }
+
+        StringWriter log = new StringWriter();
+        BufferedWriter writer = new BufferedWriter(log);
+        filtered.outputStats(writer);
+        writer.flush();
+        assertTrue(skipped > 0);
+        assertTrue(log.toString(), log.toString().contains("- Alignment skipped (no adapter seed): " + skipped + System.lineSeparator()));
+    }
+}
@@ -0,0 +1,214 @@
+import clipping.BandedScoreOnlyAlignment;
+import clipping.BitParallelAdapterSearch;
+import clipping.Clipper;
+import clipping.ExactAdapterSearch;
+import clipping.HalfLocalSequenceAlignment;
+import clipping.ScoreOnlyAlignment;
+import clipping.SequenceAlignmentResults;
+import org.junit.Test;
+import setting.MergeSettings;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the optimized alignments find the same alignment as the half local sequence alignment.
+ */
+public class AlignmentTest {
+
+    private static final String[] ADAPTERS = {
+            "AGATCGGAAGAGCACACGTCTGAACTCCAGTCAC",
+            "AGATCGGAAGAGCGTCGTGTAGGGAAAGAGTGTA",
+            "CTGTCTCTTATA",
+    };
+
+    static String randomSequence(Random random, int length) {
+        StringBuilder sequence = new StringBuilder(length);
+        for(int i = 0; i < length; i++) {
+            sequence.append("ACGT".charAt(random.nextInt(4)));
+        }
+        return sequence.toString();
+    }
+
+    static String randomRead(Random random, String adapter) {
+        int length = 1 + random.nextInt(150);
+        StringBuilder read = new StringBuilder(randomSequence(random, length));
+        //most reads contain a (mutated) part of the adapter
+        if(random.nextInt(4) > 0) {
+            int start = random.nextInt(read.length());
+            read.setLength(start);
+            for(int i = 0; i < adapter.length() && read.length() < length; i++) {
+                int r = random.nextInt(20);
+                if(r == 0) {
+                    read.append("ACGT".charAt(random.nextInt(4)));
+                } else if(r != 1) {
+                    read.append(adapter.charAt(i));
+                }
+            }
+        }
+        return read.toString();
+    }
+
+    private static void assertSameAlignment(SequenceAlignmentResults expected, SequenceAlignmentResults actual) {
+        assertEquals(expected.matches(), actual.matches());
+        assertEquals(expected.mismatches(), actual.mismatches());
+        assertEquals(expected.gaps(), actual.gaps());
+        assertEquals(expected.neutralMatches(), actual.neutralMatches());
+        assertEquals(expected.queryStart(), actual.queryStart());
+        assertEquals(expected.queryEnd(), actual.queryEnd());
+        assertEquals(expected.targetStart(), actual.targetStart());
+        assertEquals(expected.targetEnd(), actual.targetEnd());
+        assertEquals(expected.querySize(), actual.querySize());
+        assertEquals(expected.score(), actual.score(), 1e-9);
+    }
+
+    @Test
+    public void score_only_alignment_matches_half_local_alignment() {
+        Random random = new Random(7);
+        HalfLocalSequenceAlignment reference = new HalfLocalSequenceAlignment();
+        ScoreOnlyAlignment scoreOnly = new ScoreOnlyAlignment();
+        SequenceAlignmentResults results = new SequenceAlignmentResults();
+        for(int i = 0; i < 20000; i++) {
+            String adapter = ADAPTERS[i % ADAPTERS.length];
+            String read = randomRead(random, adapter);
+            reference.align(read, adapter);
+            scoreOnly.align(read, adapter, results);
+            assertSameAlignment(reference.results(), results);
+        }
+    }
+
+    @Test
+    public void banded_alignment_matches_full_alignment() {
+        Random random = new Random(13);
+        ScoreOnlyAlignment full = new ScoreOnlyAlignment();
+        BandedScoreOnlyAlignment banded = new BandedScoreOnlyAlignment(8);
+        SequenceAlignmentResults expected = new SequenceAlignmentResults();
+        SequenceAlignmentResults results = new SequenceAlignmentResults();
+        for(int i = 0; i < 20000; i++) {
+            String adapter = ADAPTERS[i % ADAPTERS.length];
+            String read = randomRead(random, adapter);
+            full.align(read, adapter, expected);
+            banded.align(read, adapter, results);
+            assertSameAlignment(expected, results);
+        }
+    }
+
+    @Test
+    public void banded_alignment_matches_full_alignment_of_long_reads() {
+        Random random = new Random(19);
+        ScoreOnlyAlignment full = new ScoreOnlyAlignment();
+        BandedScoreOnlyAlignment banded = new BandedScoreOnlyAlignment(8);
+        SequenceAlignmentResults expected = new SequenceAlignmentResults();
+        SequenceAlignmentResults results = new SequenceAlignmentResults();
+        //the last adapter is too long for the bit-parallel lower bound
+        String[] adapters = {ADAPTERS[0], ADAPTERS[1], ADAPTERS[2], ADAPTERS[0] + ADAPTERS[1]};
+        for(int i = 0; i < 8000; i++) {
+            String adapter = adapters[i % adapters.length];
+            int length = 250 + random.nextInt(51);
+            StringBuilder read = new StringBuilder(randomSequence(random, length));
+            //up to two copies of the adapter with mismatches and gaps, possibly running over the read end
+            for(int copies = random.nextInt(3); copies > 0; copies--) {
+                int position = random.nextInt(length);
+                for(int j = 0; j < adapter.length() && position < length; j++) {
+                    int r = random.nextInt(15);
+                    if(r == 0) {
+                        read.setCharAt(position++, "ACGT".charAt(random.nextInt(4)));
+                    } else if(r == 1) {
+                        read.setCharAt(position++, "ACGT".charAt(random.nextInt(4)));
+                        j--;
+                    } else if(r != 2) {
+                        read.setCharAt(position++, adapter.charAt(j));
+                    }
+                }
+            }
+            full.align(read.toString(), adapter, expected);
+            banded.align(read.toString(), adapter, results);
+            assertSameAlignment(expected, results);
+        }
+    }
+
+    @Test
+    public void narrow_band_falls_back_to_full_alignment() {
+        Random random = new Random(23);
+        ScoreOnlyAlignment full = new ScoreOnlyAlignment();
+        SequenceAlignmentResults expected = new SequenceAlignmentResults();
+        SequenceAlignmentResults results = new SequenceAlignmentResults();
+        int outside = 0;
+        for(int bandWidth = 1; bandWidth <= 3; bandWidth++) {
+            BandedScoreOnlyAlignment banded = new BandedScoreOnlyAlignment(bandWidth);
+            for(int i = 0; i < 10000; i++) {
+                String adapter = ADAPTERS[i % ADAPTERS.length];
+                StringBuilder read = new StringBuilder(randomSequence(random, random.nextInt(100)));
+                //adapters with many gaps, some alignments have more gaps than the band width
+                for(int j = 0; j < adapter.length(); j++) {
+                    int r = random.nextInt(6);
+                    if(r == 0) {
+                        read.append("ACGT".charAt(random.nextInt(4)));
+                        j--;
+                    } else if(r != 1) {
+                        read.append(adapter.charAt(j));
+                    }
+                }
+                read.append(randomSequence(random, random.nextInt(10)));
+                full.align(read.toString(), adapter, expected);
+                banded.align(read.toString(), adapter, results);
+                assertEquals(expected.score(), results.score(), 0);
+                if(expected.gaps() <= bandWidth) {
+                    assertSameAlignment(expected, results);
+                } else {
+                    outside++;
+                }
+            }
+        }
+        assertTrue("outside " + outside, outside > 500);
+    }
+
+    @Test
+    public void exact_search_finds_the_alignment_of_error_free_adapters() throws Exception {
+        Random random = new Random(17);
+        Clipper clipper = new Clipper(new MergeSettings());
+        HalfLocalSequenceAlignment reference = new HalfLocalSequenceAlignment();
+        SequenceAlignmentResults results = new SequenceAlignmentResults();
+        int found = 0;
+        for(String adapter : ADAPTERS) {
+            ExactAdapterSearch search = new ExactAdapterSearch(adapter);
+            for(int i = 0; i < 5000; i++) {
+                StringBuilder read = new StringBuilder(randomSequence(random, random.nextInt(60)));
+                read.append(adapter, 0, random.nextInt(3) == 0 ? 1 + random.nextInt(adapter.length()) : adapter.length());
+                read.append(randomSequence(random, random.nextInt(20)));
+                String query = random.nextInt(10) == 0 ? adapter.substring(0, 1 + random.nextInt(adapter.length())) : read.toString();
+                if(search.find(query, results) != ExactAdapterSearch.INCONCLUSIVE) {
+                    reference.align(query, adapter);
+                    assertSameAlignment(reference.results(), results);
+                    assertEquals(clipper.adapterCutoffIndex(reference.results()), clipper.adapterCutoffIndex(results));
+                    found++;
+                }
+            }
+        }
+        assertTrue(found > 5000);
+    }
+
+    @Test
+    public void bit_parallel_search_finds_the_full_alignment() {
+        Random random = new Random(11);
+        ScoreOnlyAlignment full = new ScoreOnlyAlignment();
+        SequenceAlignmentResults expected = new SequenceAlignmentResults();
+        SequenceAlignmentResults results = new SequenceAlignmentResults();
+        int skipped = 0;
+        for(String adapter : ADAPTERS) {
+            BitParallelAdapterSearch search = new BitParallelAdapterSearch(adapter);
+            for(int i = 0; i < 10000; i++) {
+                String read = randomRead(random, adapter);
+                full.align(read, adapter, expected);
+                if(search.align(read, results) > 0) {
+                    skipped++;
+                }
+                assertSameAlignment(expected, results);
+            }
+        }
+        //reads with long adapters are only aligned around the adapter
+        assertTrue("skipped " + skipped, skipped > 1000);
+    }
+}
@@ -1,14 +1,20 @@
+import clipping.Adapter;
 import clipping.Clipper;
+import clipping.ClippingEngine;
 import clipping.Read;
 import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
+import setting.MergeSettings;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.util.Random;
 
 import static junit.framework.TestCase.assertEquals;
 
@@ -98,6 +104,128 @@ public class ClipperTest extends AbstractTest{
         assertEquals("ATTTAAATTAAGGAAA", clipped.sequence);
     }
 
+    /*
+    The bit-parallel adapter search has to clip the cases above like the alignment
+     */
+
+    @Test
+    public void bit_parallel_engine_clips_like_alignment() throws Exception {
+        String[] sequences = {"ATTTATTAAATTT", "ATTTAAGATCGGAA", "AGATCGGAAGAGCAC", "ATTTAAATTAAGGAAA", "ATTTAAATTAAGGAAAAGATCGGAAGAGCACACGTCTGAACTCCAGTCAC"};
+        for(String sequence : sequences) {
+            Read[] clipped = new Read[ClippingEngine.values().length];
+            for(ClippingEngine engine : ClippingEngine.values()) {
+                Clipper clipper = new Clipper(mergeSettings);
+                clipper.init();
+                clipper.setAdapter(mergeSettings.getForwardAdapter());
+                clipper.setEngine(engine);
+                String quality = sequence.replaceAll(".", "!");
+                clipped[engine.ordinal()] = clipper.clip(new Read("@" + engine, sequence, "+", quality));
+            }
+            for(ClippingEngine engine : ClippingEngine.values()) {
+                assertEquals(engine + " " + sequence, clipped[ClippingEngine.ALIGNMENT.ordinal()].sequence, clipped[engine.ordinal()].sequence);
+            }
+        }
+    }
+
+    /*
+    Several adapters: each read is clipped at the adapter it contains
+     */
+
+    @Test
+    public void clipper_multiple_adapters() throws Exception {
+        Clipper clipper = new Clipper(mergeSettings);
+        clipper.setAdapters(Adapter.parse(mergeSettings.getForwardAdapter() + ",ctgtctcttatacacatct"));
+        clipper.init();
+        String[] sequences = {"ATTTATTAAATTTAGATCGGAAGAGCACACG", "ATTTATTAAATTTCTGTCTCTTATACACATCT", "ATTTATTAAATTTGGCAT"};
+        String[] expected = {"ATTTATTAAATTT", "ATTTATTAAATTT", "ATTTATTAAATTTGGCAT"};
+        for(int i = 0; i < sequences.length; i++) {
+            String quality = sequences[i].replaceAll(".", "!");
+            Read clipped = clipper.clip(new Read("@MultipleAdapters", sequences[i], "+", quality));
+            assertEquals(expected[i], clipped.sequence);
+        }
+    }
+
+    /*
+    Several adapters: each read is clipped like with the adapter clipping it first on its own
+     */
+
+    @Test
+    public void clipper_multiple_adapters_clips_like_each_adapter() throws Exception {
+        String[] adapters = {mergeSettings.getForwardAdapter(), mergeSettings.getReverseAdapter()};
+        Clipper clipper = new Clipper(mergeSettings);
+        clipper.setAdapters(Adapter.parse(adapters[0] + "," + adapters[1]));
+        clipper.init();
+        Clipper[] single = new Clipper[adapters.length];
+        for(int a = 0; a < adapters.length; a++) {
+            single[a] = new Clipper(mergeSettings);
+            single[a].init();
+            single[a].setAdapter(adapters[a]);
+        }
+
+        Random random = new Random(29);
+        for(int i = 0; i < 20000; i++) {
+            String sequence = AlignmentTest.randomRead(random, adapters[i % adapters.length]);
+            String quality = sequence.replaceAll(".", "I");
+            Read expected = null;
+            for(Clipper c : single) {
+                Read clipped = c.clip(new Read("@Single", sequence, "+", quality));
+                //the earliest cutoff wins, and a read discarded for one adapter is discarded for both
+                if(expected == null || clipped.name.equals("null") || (!expected.name.equals("null") && clipped.sequence.length() < expected.sequence.length())) {
+                    expected = clipped;
+                }
+            }
+            Read clipped = clipper.clip(new Read("@Multiple", sequence, "+", quality));
+            assertEquals(sequence, expected.name.equals("null") ? "null" : expected.sequence, clipped.name.equals("null") ? "null" : clipped.sequence);
+        }
+    }
+
+    /*
+    Cached results: duplicated reads are clipped like the first copy, also after evictions
+     */
+
+    @Test
+    public void clipper_cache_clips_duplicates_like_the_first_copy() throws Exception {
+        Clipper clipper = new Clipper(mergeSettings);
+        clipper.setCacheSize(8);
+        clipper.init();
+        clipper.setAdapter(mergeSettings.getForwardAdapter());
+        String[] sequences = {"ATTTATTAAATTT", "ATTTAAGATCGGAA", "ATTTAAATTAAGGAAA", "ATTTAAATTAAGGAAAAGATCGGAAGAGCACACGTCTGAACTCCAGTCAC"};
+        String[] expected = {"ATTTATTAAATTT", "ATTTA", "ATTTAAATTAAGGAAA", "ATTTAAATTAAGGAAA"};
+        for(int round = 0; round < 20; round++) {
+            for(int i = 0; i < sequences.length; i++) {
+                String sequence = round % 2 == 0 ? sequences[i] : sequences[i] + "ACGTTGCA".substring(0, round % 8);
+                String quality = sequence.replaceAll(".", "!");
+                Read clipped = clipper.clip(new Read("@Cached", sequence, "+", quality));
+                if(round % 2 == 0) {
+                    assertEquals(expected[i], clipped.sequence);
+                }
+            }
+        }
+    }
+
+    /*
+    Statistics: the counters of the adapter searches are only logged with -verbose
+     */
+
+    @Test
+    public void clipper_logs_search_counters_only_if_verbose() throws Exception {
+        for(boolean verbose : new boolean[]{false, true}) {
+            MergeSettings settings = new MergeSettings();
+            settings.setVerbose(verbose);
+            Clipper clipper = new Clipper(settings);
+            clipper.setAdapter(mergeSettings.getForwardAdapter());
+            clipper.init();
+            String sequence = "ATTTAAGATCGGAAGAGCACACGTCTGAACTCCAGTCAC";
+            clipper.clip(new Read("@Verbose", sequence, "+", sequence.replaceAll(".", "!")));
+            StringWriter log = new StringWriter();
+            BufferedWriter writer = new BufferedWriter(log);
+            clipper.outputStats(writer);
+            writer.flush();
+            assertEquals(log.toString(), verbose, log.toString().contains("- Exact adapter found: 1"));
+            assertEquals(log.toString(), verbose, log.toString().contains("- Aligned: 0"));
+        }
+    }
+
     /*
     Case 4: Read contains full adapter sequence at 3'
      */
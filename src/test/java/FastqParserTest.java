@@ -0,0 +1,109 @@
+import clipping.Read;
+import io.FastqParser;
+import io.FastqRecord;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+/**
+ * Tests for the byte based FASTQ parser, especially line endings and the end of the input.
+ */
+public class FastqParserTest {
+
+    private static FastqParser parser(String content, int bufferSize) {
+        return new FastqParser(new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII)), bufferSize);
+    }
+
+    @Test
+    public void parser_unix_line_endings() throws Exception {
+        FastqParser parser = parser("@r1\nACGT\n+\nIIII\n@r2\nGG\n+\n!!\n", 1024);
+        FastqRecord record = new FastqRecord();
+
+        assertTrue(parser.next(record));
+        Read read = record.toRead();
+        assertEquals("@r1", read.name);
+        assertEquals("ACGT", read.sequence);
+        assertEquals("+", read.empty);
+        assertEquals("IIII", read.quality);
+        assertEquals(16, record.length());
+
+        assertTrue(parser.next(record));
+        assertEquals("GG", record.toRead().sequence);
+        assertFalse(parser.next(record));
+        assertEquals(2, parser.recordsParsed());
+    }
+
+    @Test
+    public void parser_windows_line_endings() throws Exception {
+        FastqParser parser = parser("@r1\r\nACGT\r\n+\r\nIIII\r\n", 1024);
+        FastqRecord record = new FastqRecord();
+
+        assertTrue(parser.next(record));
+        Read read = record.toRead();
+        assertEquals("@r1", read.name);
+        assertEquals("ACGT", read.sequence);
+        assertEquals("IIII", read.quality);
+        assertEquals(20, record.length());
+        assertFalse(parser.next(record));
+    }
+
+    @Test
+    public void parser_missing_final_newline_and_trailing_blank_lines() throws Exception {
+        FastqRecord record = new FastqRecord();
+
+        FastqParser parser = parser("@r1\nACGT\n+\nIIII", 1024);
+        assertTrue(parser.next(record));
+        assertEquals("IIII", record.toRead().quality);
+        assertFalse(parser.next(record));
+
+        parser = parser("@r1\nACGT\n+\nIIII\n\n\r\n", 1024);
+        assertTrue(parser.next(record));
+        assertFalse(parser.next(record));
+    }
+
+    @Test(expected = IOException.class)
+    public void parser_truncated_last_record() throws Exception {
+        FastqParser parser = parser("@r1\nACGT\n+\nIIII\n@r2\nACGT\n", 1024);
+        FastqRecord record = new FastqRecord();
+        assertTrue(parser.next(record));
+        parser.next(record);
+    }
+
+    @Test(expected = IOException.class)
+    public void parser_truncated_quality_line() throws Exception {
+        FastqParser parser = parser("@r1\nACGT\n+\nII", 1024);
+        parser.next(new FastqRecord());
+    }
+
+    @Test
+    public void parser_records_larger_than_buffer() throws Exception {
+        StringBuilder content = new StringBuilder();
+        StringBuilder sequence = new StringBuilder();
+        StringBuilder quality = new StringBuilder();
+        for(int i = 0; i < 3000; i++) {
+            sequence.append("ACGT".charAt(i % 4));
+            quality.append('I');
+        }
+        for(int i = 0; i < 10; i++) {
+            content.append("@read").append(i).append('\n').append(sequence).append("\n+\n").append(quality).append('\n');
+        }
+
+        FastqParser parser = parser(content.toString(), 1024);
+        FastqRecord record = new FastqRecord();
+        int count = 0;
+        while(parser.next(record)) {
+            Read read = record.toRead();
+            assertEquals("@read" + count, read.name);
+            assertEquals(sequence.toString(), read.sequence);
+            assertEquals(quality.toString(), read.quality);
+            count++;
+        }
+        assertEquals(10, count);
+    }
+}
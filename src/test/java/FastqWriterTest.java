@@ -0,0 +1,89 @@
+import clipping.Read;
+import io.AsyncWriter;
+import io.FastqWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.fail;
+
+/**
+ * Tests that the FASTQ writer produces the same records as the former String based output.
+ */
+public class FastqWriterTest {
+
+    private static String expected(Read read, String prefix) {
+        return read.name.replaceFirst("@", "@" + prefix) + "\n" + read.sequence + "\n" + read.empty + "\n" + read.quality + "\n";
+    }
+
+    @Test
+    public void writer_inserts_prefix_like_replaceFirst() throws Exception {
+        Read[] reads = {
+                new Read("@r1 1:N:0", "ACGT", "+", "IIII"),
+                new Read("@r2@x", "A", "+r2", "I"),
+                new Read("noAt", "", "+", ""),
+        };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FastqWriter writer = new FastqWriter(out, 8);
+        StringBuilder expected = new StringBuilder();
+        for(Read read : reads) {
+            for(String prefix : new String[] {"", "F_", "M_"}) {
+                writer.write(read, prefix);
+                expected.append(expected(read, prefix));
+            }
+        }
+        writer.close();
+
+        assertEquals(expected.toString(), new String(out.toByteArray(), "US-ASCII"));
+    }
+
+    @Test
+    public void async_writer_writes_the_buffers_in_order() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncWriter writer = new AsyncWriter(out, "test writer");
+        writer.start();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16];
+        for(int i = 0; i < 1000; i++) {
+            int length = i % buffer.length;
+            for(int j = 0; j < length; j++) {
+                buffer[j] = (byte)('A' + (i + j) % 26);
+            }
+            expected.write(buffer, 0, length);
+            buffer = writer.submit(buffer, length);
+        }
+        writer.close();
+
+        assertEquals(expected.toString("US-ASCII"), out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void async_writer_rethrows_failures_of_the_writing_thread() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("disk gone");
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw failure;
+            }
+        };
+        AsyncWriter writer = new AsyncWriter(out, "failing writer");
+        writer.start();
+        byte[] buffer = writer.submit(new byte[4], 4);
+        try {
+            //the failure is reported by a later submit or at the latest by close
+            for(int i = 0; i < 1000; i++) {
+                buffer = writer.submit(buffer, 4);
+                Thread.sleep(1);
+            }
+            writer.close();
+            fail("the failure of the writing thread was not rethrown");
+        } catch(IllegalStateException e) {
+            assertSame(failure, e);
+        }
+    }
+}
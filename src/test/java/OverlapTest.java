@@ -0,0 +1,137 @@
+import org.junit.Test;
+import threads.MergeThread;
+import trimming.QualityTrimmer;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the overlap search used for merging read pairs.
+ */
+public class OverlapTest {
+
+    @Test
+    public void overlap_at_the_end_of_the_forward_read() {
+        int[] overlap = MergeThread.findOverlap("ACGTACGTTTGCA", "TTGCAGGG", "IIIIIIIIIIIII", "IIIIIIII", 3, 0.1, 33, true);
+        assertArrayEquals(new int[]{8, 0}, overlap);
+    }
+
+    @Test
+    public void longer_reverse_read_is_shifted_against_the_forward_read() {
+        int[] overlap = MergeThread.findOverlap("GGATCC", "AAGGATCC", "IIIIII", "IIIIIIII", 3, 0.1, 33, true);
+        assertArrayEquals(new int[]{0, 2}, overlap);
+    }
+
+    @Test
+    public void low_quality_mismatches_are_only_ignored_if_quality_based() {
+        int[] overlap = MergeThread.findOverlap("ACGTACGTTTGCATTAC", "TTGAATTACGG", "IIIIIIIIIIIIIIIII", "III#IIIIIII", 5, 0.05, 33, true);
+        assertArrayEquals(new int[]{8, 0}, overlap);
+        overlap = MergeThread.findOverlap("ACGTACGTTTGCATTAC", "TTGAATTACGG", "IIIIIIIIIIIIIIIII", "III#IIIIIII", 5, 0.05, 33, false);
+        assertArrayEquals(new int[]{-1, -1}, overlap);
+    }
+
+    /**
+     * the overlap search as it was before the mismatch budget, kept to compare against
+     */
+    private static int[] baselineOverlap(String seq1, String seq2, String qual1, String qual2, int minOverlap, double errRate, int qualOffset, boolean qualityBasedMM) {
+        char[] s1 = seq1.toCharArray();
+        char[] s2 = seq2.toCharArray();
+        char[] q1 = qual1.toCharArray();
+        char[] q2 = qual2.toCharArray();
+
+        int n = s1.length;
+        int m = s2.length;
+        int rOffset = Math.max(m - n, 0);
+        int start = Math.max(0, n - m);
+        int stop = n - minOverlap + 1;
+
+        int currentBestFIndex = -1;
+        int currentBestRIndex = -1;
+        int numMatches = 0;
+        int sum = 0;
+
+        for(int i = start; i < stop; i++) {
+            while(rOffset > 0) {
+                sum = 0;
+                for(int j = 0; j < Math.min(n - i, m); j++) {
+                    sum += baselineMismatch(s1[i + j], s2[j + rOffset], q1[i + j], q2[j + rOffset], qualOffset, qualityBasedMM);
+                }
+                int overlap = n - i;
+                if(sum <= overlap * errRate && overlap - sum > numMatches) {
+                    currentBestFIndex = i;
+                    currentBestRIndex = rOffset;
+                    numMatches = overlap - sum;
+                }
+                rOffset--;
+            }
+
+            sum = 0;
+            for(int j = 0; j < Math.min(n - i, m); j++) {
+                sum += baselineMismatch(s1[i + j], s2[j], q1[i + j], q2[j], qualOffset, qualityBasedMM);
+            }
+            int overlap = n - i;
+            if(sum <= overlap * errRate && overlap - sum > numMatches) {
+                currentBestFIndex = i;
+                currentBestRIndex = rOffset;
+                numMatches = overlap - sum;
+            }
+        }
+        return new int[]{currentBestFIndex, currentBestRIndex};
+    }
+
+    private static int baselineMismatch(char s1, char s2, char q1, char q2, int qualOffset, boolean qualityBasedMM) {
+        if(qualityBasedMM && QualityTrimmer.translateQuality(q1, qualOffset) < 10) {
+            s1 = 'N';
+        }
+        if(qualityBasedMM && QualityTrimmer.translateQuality(q2, qualOffset) < 10) {
+            s2 = 'N';
+        }
+        return s1 == s2 || s1 == 'N' || s2 == 'N' ? 0 : 1;
+    }
+
+    private static String randomBases(Random random, int length) {
+        StringBuilder bases = new StringBuilder(length);
+        for(int i = 0; i < length; i++) {
+            bases.append("ACGTN".charAt(random.nextInt(50) == 0 ? 4 : random.nextInt(4)));
+        }
+        return bases.toString();
+    }
+
+    private static String randomQualities(Random random, int length) {
+        StringBuilder qualities = new StringBuilder(length);
+        for(int i = 0; i < length; i++) {
+            qualities.append((char)(33 + (random.nextInt(10) == 0 ? random.nextInt(10) : 10 + random.nextInt(80))));
+        }
+        return qualities.toString();
+    }
+
+    @Test
+    public void overlap_is_found_like_the_baseline_search() {
+        Random random = new Random(25);
+        double[] errRates = {0, 0.01, 0.05, 0.1, 0.2, 0.5};
+        for(int k = 0; k < 50000; k++) {
+            //two reads sharing an overlap of random length, with mismatches at a random error rate
+            int n = 1 + random.nextInt(120);
+            int m = 1 + random.nextInt(120);
+            int overlap = random.nextInt(Math.min(n, m) + 1);
+            String forward = randomBases(random, n);
+            StringBuilder reverse = new StringBuilder(forward.substring(n - overlap)).append(randomBases(random, m - overlap));
+            double mutationRate = random.nextDouble() * 0.3;
+            for(int i = 0; i < reverse.length(); i++) {
+                if(random.nextDouble() < mutationRate) {
+                    reverse.setCharAt(i, "ACGT".charAt(random.nextInt(4)));
+                }
+            }
+
+            String qual1 = randomQualities(random, n);
+            String qual2 = randomQualities(random, m);
+            int minOverlap = 1 + random.nextInt(15);
+            double errRate = errRates[random.nextInt(errRates.length)];
+            boolean qualityBasedMM = random.nextBoolean();
+            assertArrayEquals(forward + " " + reverse + " " + minOverlap + " " + errRate + " " + qualityBasedMM,
+                    baselineOverlap(forward, reverse.toString(), qual1, qual2, minOverlap, errRate, 33, qualityBasedMM),
+                    MergeThread.findOverlap(forward, reverse.toString(), qual1, qual2, minOverlap, errRate, 33, qualityBasedMM));
+        }
+    }
+}
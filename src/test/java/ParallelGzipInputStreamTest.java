@@ -0,0 +1,119 @@
+import io.ParallelGzipInputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the parallel decompression of BGZF files.
+ */
+public class ParallelGzipInputStreamTest {
+
+    private static void writeBlock(ByteArrayOutputStream out, byte[] data, int off, int len) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, off, len);
+        deflater.finish();
+        byte[] compressed = new byte[len + 1024];
+        int clen = deflater.deflate(compressed);
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+
+        int bsize = 18 + clen + 8 - 1;
+        out.write(new byte[] {31, (byte)139, 8, 4, 0, 0, 0, 0, 0, (byte)255, 6, 0, 'B', 'C', 2, 0, (byte)bsize, (byte)(bsize >> 8)}, 0, 18);
+        out.write(compressed, 0, clen);
+        writeInt(out, (int)crc.getValue());
+        writeInt(out, len);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        for(int i = 0; i < 4; i++) {
+            out.write(value >>> (8 * i));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7777];
+        int n;
+        while((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void bgzf_blocks_are_returned_in_order() throws Exception {
+        byte[] data = new byte[1000000];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (byte)"ACGT\n@+I".charAt((i * 31 + i / 7) % 8);
+        }
+
+        ByteArrayOutputStream bgzf = new ByteArrayOutputStream();
+        for(int off = 0; off < data.length; off += 65280) {
+            writeBlock(bgzf, data, off, Math.min(65280, data.length - off));
+        }
+        writeBlock(bgzf, data, 0, 0);
+
+        byte[] result = readAll(new ParallelGzipInputStream(new ByteArrayInputStream(bgzf.toByteArray()), 4));
+        assertArrayEquals(data, result);
+
+        File file = File.createTempFile("bgzf", ".gz");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        bgzf.writeTo(out);
+        out.close();
+        assertTrue(ParallelGzipInputStream.isBgzf(file));
+    }
+
+    @Test
+    public void invalid_block_sizes_are_reported() throws Exception {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        writeBlock(block, new byte[] {'A', 'C', 'G', 'T'}, 0, 4);
+        byte[] valid = block.toByteArray();
+
+        //BSIZE too small for the header and trailer
+        byte[] tooSmall = valid.clone();
+        tooSmall[16] = 20;
+        tooSmall[17] = 0;
+        //ISIZE above the 64 KB maximum of a block
+        byte[] tooLarge = valid.clone();
+        tooLarge[valid.length - 2] = 1;
+
+        for(byte[] invalid : new byte[][] {tooSmall, tooLarge}) {
+            try {
+                readAll(new ParallelGzipInputStream(new ByteArrayInputStream(invalid), 2));
+                fail("invalid block was accepted");
+            } catch(IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid BGZF block"));
+            }
+        }
+        assertArrayEquals(new byte[] {'A', 'C', 'G', 'T'}, readAll(new ParallelGzipInputStream(new ByteArrayInputStream(valid), 2)));
+    }
+
+    @Test
+    public void plain_gzip_is_not_bgzf() throws Exception {
+        File file = File.createTempFile("plain", ".gz");
+        file.deleteOnExit();
+        GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        out.write("@r1\nACGT\n+\nIIII\n".getBytes("US-ASCII"));
+        out.close();
+        assertFalse(ParallelGzipInputStream.isBgzf(file));
+        assertEquals(0, readAll(new ParallelGzipInputStream(new ByteArrayInputStream(new byte[0]), 2)).length);
+    }
+}
@@ -0,0 +1,72 @@
+import io.ParallelGzipInputStream;
+import io.ParallelGzipOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests that the block compressed output can be read as multi-member gzip and as BGZF.
+ */
+public class ParallelGzipOutputStreamTest {
+
+    private static byte[] data() {
+        Random random = new Random(42);
+        byte[] data = new byte[3000000];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i % 101 == 100 ? '\n' : "ACGT".charAt(random.nextInt(4)));
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, boolean bgzf) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 3, 6, bgzf);
+        int off = 0;
+        while(off < data.length) {
+            int len = Math.min(12345, data.length - off);
+            out.write(data, off, len);
+            out.flush();
+            off += len;
+        }
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int n;
+        while((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void gzip_members_are_written_in_order() throws Exception {
+        byte[] data = data();
+        byte[] compressed = compress(data, false);
+        assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void bgzf_blocks_are_readable() throws Exception {
+        byte[] data = data();
+        byte[] compressed = compress(data, true);
+        assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        assertArrayEquals(data, readAll(new ParallelGzipInputStream(new ByteArrayInputStream(compressed), 2)));
+    }
+
+    @Test
+    public void empty_output_is_valid_gzip() throws Exception {
+        byte[] compressed = compress(new byte[0], false);
+        assertArrayEquals(new byte[0], readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+}
@@ -0,0 +1,79 @@
+import io.ReadAheadInputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests that reading ahead returns the bytes of the stream and its failures.
+ */
+public class ReadAheadInputStreamTest {
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for(int i = 0; i < length; i++) {
+            data[i] = (byte)i;
+        }
+        return data;
+    }
+
+    @Test
+    public void read_ahead_returns_the_bytes_of_the_stream() throws Exception {
+        byte[] data = data(10000);
+        InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 2, 7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[5];
+        int n;
+        while((n = in.read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void read_ahead_rethrows_failures_of_the_reading_thread() throws Exception {
+        final byte[] data = data(100);
+        final IllegalStateException failure = new IllegalStateException("corrupt input");
+        InputStream failing = new InputStream() {
+            private int position = 0;
+
+            @Override
+            public int read() throws IOException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(position == data.length) {
+                    throw failure;
+                }
+                int n = Math.min(Math.min(len, 10), data.length - position);
+                System.arraycopy(data, position, b, off, n);
+                position += n;
+                return n;
+            }
+        };
+        InputStream in = new ReadAheadInputStream(failing, 2, 16);
+        for(int i = 0; i < data.length; i++) {
+            assertEquals(data[i] & 0xff, in.read());
+        }
+        for(int i = 0; i < 2; i++) {
+            try {
+                in.read();
+                fail("the failure of the reading thread was not rethrown");
+            } catch(IllegalStateException e) {
+                assertSame(failure, e);
+            }
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,55 @@
+import org.junit.Test;
+import threads.SpscRing;
+import threads.WaitStrategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that the ring hands over all elements in order and respects its capacity.
+ */
+public class SpscRingTest {
+
+    @Test
+    public void capacity_is_not_rounded_up() {
+        SpscRing<Integer> ring = new SpscRing<Integer>(3, WaitStrategy.SPIN);
+        for(int i = 0; i < 3; i++) {
+            ring.offer(i);
+        }
+        assertFalse(ring.offer(3));
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertEquals(Integer.valueOf(1), ring.poll());
+        assertEquals(Integer.valueOf(2), ring.poll());
+        assertNull(ring.poll());
+    }
+
+    @Test(timeout = 60000)
+    public void elements_arrive_in_order() throws Exception {
+        for(WaitStrategy strategy : WaitStrategy.values()) {
+            //spinning threads starve each other on a single core
+            if(strategy == WaitStrategy.SPIN && Runtime.getRuntime().availableProcessors() == 1) {
+                continue;
+            }
+            final SpscRing<Integer> ring = new SpscRing<Integer>(5, strategy);
+            final int n = 5000;
+            Thread producer = new Thread() {
+                public void run() {
+                    try {
+                        for(int i = 0; i < n; i++) {
+                            ring.put(i);
+                        }
+                    } catch(InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            producer.start();
+            for(int i = 0; i < n; i++) {
+                assertEquals(i, ring.take().intValue());
+            }
+            producer.join();
+            assertNull(ring.poll());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2016. ClipAndMerge Guenter Jaeger
+ * This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package clipping;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The score-only alignment of {@link ScoreOnlyAlignment}, vectorized with the (incubating) Java Vector API.
+ *
+ * The matrix is filled anti-diagonal by anti-diagonal, because all cells of an anti-diagonal are independent.
+ * The cells of a diagonal are indexed by their query position: the left and upper neighbours lie on the previous
+ * diagonal and the upper left neighbour on the one before, so all of them are contiguous loads.
+ * The target is stored reversed, so its nucleotides along a diagonal are contiguous, too.
+ * Scores, origins and the highest scored cell, including the order of ties, are the same as in the scalar alignment.
+ *
+ * This class is compiled in a separate source set, it is only used if the module jdk.incubator.vector is available.
+ */
+public class VectorScoreOnlyAlignment extends ScoreOnlyAlignment {
+
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	//the origins are narrowed to bytes of the same shape, whose lanes beyond SPECIES.length() are 0
+	private static final VectorSpecies<Byte> BYTE_SPECIES = SPECIES.withLanes(byte.class);
+
+	//the scores of the last three diagonals, index 0 is the query position -1
+	private int[] diagonal = new int[0];
+	private int[] previousDiagonal = new int[0];
+	private int[] secondDiagonal = new int[0];
+
+	private int[] queryCodes = new int[0];
+	private int[] reversedTargetCodes = new int[0];
+
+	//the origins of the width x height cells, stored diagonal by diagonal without gaps
+	private byte[] origins = new byte[0];
+	//the index of the first origin of each diagonal
+	private int[] diagonalStarts = new int[0];
+
+	public boolean vectorized() {
+		return true;
+	}
+
+	public void align(String query, String target, SequenceAlignmentResults results) {
+		int width = query.length();
+		int height = target.length();
+		prepare(query, target);
+
+		results.reset();
+		results.setQuerySequence(query);
+		results.setTargetSequence(target);
+
+		int highestScore = LOWEST_SCORE;
+		int highestQueryIndex = 0;
+		int highestTargetIndex = 0;
+
+		IntVector match = IntVector.broadcast(SPECIES, MATCH);
+		IntVector mismatch = IntVector.broadcast(SPECIES, MISMATCH);
+		IntVector noGap = IntVector.broadcast(SPECIES, NO_GAP_IN_QUERY);
+		IntVector fromUpper = IntVector.broadcast(SPECIES, FROM_UPPER);
+		IntVector fromLeft = IntVector.broadcast(SPECIES, FROM_LEFT);
+		IntVector fromUpperLeft = IntVector.broadcast(SPECIES, FROM_UPPER_LEFT);
+		IntVector lanes = IntVector.zero(SPECIES).addIndex(1);
+
+		int diagonals = width + height - 1;
+		for(int d = 0; d < diagonals; d++) {
+			int first = Math.max(0, d - height + 1);
+			int last = Math.min(width - 1, d);
+			int best = LOWEST_SCORE;
+			int bestQueryIndex = -1;
+
+			for(int q = first; q <= last; q += SPECIES.length()) {
+				//the arrays are padded, so the lanes beyond the diagonal are computed, too, but they are ignored
+				VectorMask<Integer> inRange = SPECIES.indexInRange(q, last + 1);
+
+				//the cell (q, d - q) reads (q, t - 1) and (q - 1, t) from the previous and (q - 1, t - 1) from the second diagonal
+				IntVector up = IntVector.fromArray(SPECIES, previousDiagonal, q + 1).add(GAP);
+				IntVector left = IntVector.fromArray(SPECIES, previousDiagonal, q).add(GAP);
+				IntVector upLeft = IntVector.fromArray(SPECIES, secondDiagonal, q);
+
+				IntVector queryNucleotides = IntVector.fromArray(SPECIES, queryCodes, q);
+				IntVector targetNucleotides = IntVector.fromArray(SPECIES, reversedTargetCodes, height - 1 - d + q);
+				upLeft = upLeft.add(mismatch.blend(match, queryNucleotides.compare(VectorOperators.EQ, targetNucleotides)));
+
+				//no gaps in the query in front of the target (t > 3 && t - 3 > q)
+				IntVector queryIndex = lanes.add(q);
+				IntVector targetIndex = queryIndex.neg().add(d);
+				VectorMask<Integer> blocked = targetIndex.compare(VectorOperators.GT, 3)
+						.and(targetIndex.sub(queryIndex).compare(VectorOperators.GT, 3));
+				left = left.blend(noGap, blocked);
+
+				VectorMask<Integer> upWins = up.compare(VectorOperators.GT, upLeft);
+				IntVector score = upLeft.blend(up, upWins);
+				IntVector origin = fromUpperLeft.blend(fromUpper, upWins);
+				VectorMask<Integer> leftWins = left.compare(VectorOperators.GT, score);
+				score = score.blend(left, leftWins);
+				origin = origin.blend(fromLeft, leftWins);
+
+				score.intoArray(diagonal, q + 1);
+				//the lanes beyond the diagonal are overwritten by the next one, or end in the tail of the array
+				((ByteVector)origin.convertShape(VectorOperators.I2B, BYTE_SPECIES, 0)).intoArray(origins, diagonalStarts[d] + q - first);
+
+				//the first cell of the diagonal with its highest score
+				int max = score.reduceLanes(VectorOperators.MAX, inRange);
+				if(max > best) {
+					best = max;
+					bestQueryIndex = q + score.compare(VectorOperators.EQ, max, inRange).firstTrue();
+				}
+			}
+
+			//ties are resolved like the query by query order of the scalar alignment
+			if(bestQueryIndex >= 0 && (best > highestScore || (best == highestScore && bestQueryIndex < highestQueryIndex))) {
+				highestScore = best;
+				highestQueryIndex = bestQueryIndex;
+				highestTargetIndex = d - bestQueryIndex;
+			}
+
+			//the borders needed by the next diagonals: query position -1 and target position -1
+			diagonal[0] = targetBorder(d + 1);
+			if(d + 2 < diagonal.length) {
+				diagonal[d + 2] = 0;
+			}
+
+			int[] swap = secondDiagonal;
+			secondDiagonal = previousDiagonal;
+			previousDiagonal = diagonal;
+			diagonal = swap;
+		}
+
+		traceback(query, target, highestQueryIndex, highestTargetIndex, results);
+	}
+
+	protected int origin(int queryIndex, int targetIndex, int height) {
+		int d = queryIndex + targetIndex;
+		return origins[diagonalStarts[d] + queryIndex - Math.max(0, d - height + 1)];
+	}
+
+	/**
+	 * resizes the workspace and copies the sequences into it
+	 * @param query
+	 * @param target
+	 */
+	private void prepare(String query, String target) {
+		int width = query.length();
+		int height = target.length();
+
+		//the vectors read and write up to one vector beyond the diagonals
+		int size = width + 2 + SPECIES.length();
+		if(diagonal.length < size) {
+			diagonal = new int[size];
+			previousDiagonal = new int[size];
+			secondDiagonal = new int[size];
+			queryCodes = new int[size];
+		}
+		if(reversedTargetCodes.length < height + SPECIES.length()) {
+			reversedTargetCodes = new int[height + SPECIES.length()];
+		}
+		if(origins.length < width * height + BYTE_SPECIES.length()) {
+			origins = new byte[width * height + BYTE_SPECIES.length()];
+		}
+		if(diagonalStarts.length < width + height) {
+			diagonalStarts = new int[width + height];
+		}
+		int start = 0;
+		for(int d = 0; d < width + height - 1; d++) {
+			diagonalStarts[d] = start;
+			start += Math.min(width - 1, d) - Math.max(0, d - height + 1) + 1;
+		}
+
+		for(int i = 0; i < width; i++) {
+			queryCodes[i] = query.charAt(i);
+		}
+		for(int i = 0; i < height; i++) {
+			reversedTargetCodes[height - 1 - i] = target.charAt(i);
+		}
+
+		//the diagonals -1 and -2 only provide borders, which are all 0
+		previousDiagonal[0] = 0;
+		previousDiagonal[1] = 0;
+		secondDiagonal[0] = 0;
+	}
+}